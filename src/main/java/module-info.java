@@ -2,6 +2,8 @@ module pipeJar {
     requires org.apache.logging.log4j;
     requires org.json;
     requires commons.cli;
+    requires java.net.http;
+    requires jdk.httpserver;
 
     exports org.exbio.pipejar.pipeline;
     exports org.exbio.pipejar.configs;
@@ -10,4 +12,5 @@ module pipeJar {
     exports org.exbio.pipejar.configs.ConfigTypes.InputTypes;
     exports org.exbio.pipejar.configs.ConfigValidators;
     exports org.exbio.pipejar.util;
+    exports org.exbio.pipejar.cache;
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package org.exbio.pipejar.cache;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs directories into zip archives and back, used to transfer outputs to and from remote caches.
+ */
+class Archives {
+    private Archives() {
+    }
+
+    static void pack(File directory, OutputStream target) throws IOException {
+        Path source = directory.toPath();
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(target));
+
+        Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        if (!dir.equals(source)) {
+                            zip.putNextEntry(new ZipEntry(entryName(source, dir) + "/"));
+                            zip.closeEntry();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (attrs.isRegularFile()) {
+                            zip.putNextEntry(new ZipEntry(entryName(source, file)));
+                            Files.copy(file, zip);
+                            zip.closeEntry();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * Extracts the archive into the given directory, which has to exist. Entries pointing outside of it are
+     * rejected.
+     */
+    static void unpack(InputStream source, File directory) throws IOException {
+        Path target = directory.toPath().toAbsolutePath().normalize();
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(source));
+
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            Path resolved = target.resolve(entry.getName()).normalize();
+            if (!resolved.startsWith(target) || resolved.equals(target)) {
+                throw new IOException("Invalid archive entry: " + entry.getName());
+            }
+
+            if (entry.isDirectory()) {
+                Files.createDirectories(resolved);
+            } else {
+                Files.createDirectories(resolved.getParent());
+                Files.copy(zip, resolved, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static String entryName(Path root, Path path) {
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
@@ -0,0 +1,158 @@
+package org.exbio.pipejar.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal HTTP server for the protocol of the {@link RemoteCache}, storing the uploaded archives in a directory.
+ * <p>
+ * Meant for tests and small setups without a dedicated cache service. Start it with
+ * {@code java -cp <classpath> org.exbio.pipejar.cache.CacheServer <port> <directory> [<bind address>]}.
+ * <p>
+ * The server does not authenticate its clients, so it only listens on the loopback interface unless another address
+ * is given. Like the local output cache, the first upload of a key wins: uploading an existing key is rejected with 409
+ * and leaves the stored archive untouched. Uploads larger than the size limit are rejected with 413.
+ */
+public class CacheServer {
+    private static final Pattern keyPattern = Pattern.compile("[0-9A-Za-z]{1,128}");
+    private static final long defaultMaxArchiveSize = 4L << 30;
+    private static final int bufferSize = 1 << 16;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Path directory;
+    private final Path temporaryDirectory;
+    private final long maxArchiveSize;
+
+    /**
+     * Listens on the loopback interface only.
+     *
+     * @param port      the port to listen on, 0 picks a free one
+     * @param directory the directory storing the archives, created if necessary
+     */
+    public CacheServer(int port, File directory) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), directory, defaultMaxArchiveSize);
+    }
+
+    /**
+     * @param address        the address to listen on. Anyone who can reach it can read and add entries.
+     * @param directory      the directory storing the archives, created if necessary
+     * @param maxArchiveSize the maximum size of an uploaded archive in bytes
+     */
+    public CacheServer(InetSocketAddress address, File directory, long maxArchiveSize) throws IOException {
+        this.directory = directory.toPath();
+        this.temporaryDirectory = this.directory.resolve(".tmp");
+        this.maxArchiveSize = maxArchiveSize;
+        Files.createDirectories(temporaryDirectory);
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/cas/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 3) {
+            System.out.println("Usage: CacheServer <port> <directory> [<bind address>]");
+            System.exit(1);
+        }
+        InetAddress address = args.length == 3 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+        CacheServer server = new CacheServer(new InetSocketAddress(address, Integer.parseInt(args[0])),
+                new File(args[1]), defaultMaxArchiveSize);
+        server.start();
+        System.out.println("Cache server listening on " + address.getHostAddress() + ":" + server.getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String key = exchange.getRequestURI().getPath().substring("/cas/".length());
+            if (!keyPattern.matcher(key).matches()) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            Path archive = directory.resolve(key + ".zip");
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> {
+                    if (!Files.isRegularFile(archive)) {
+                        exchange.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "application/zip");
+                    exchange.sendResponseHeaders(200, Files.size(archive));
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        Files.copy(archive, body);
+                    }
+                }
+                case "PUT" -> exchange.sendResponseHeaders(store(exchange, archive), -1);
+                default -> exchange.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    /**
+     * @return the status code of the response
+     */
+    private int store(HttpExchange exchange, Path archive) throws IOException {
+        if (Files.exists(archive)) {
+            return 409;
+        }
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (contentLength != null && Long.parseLong(contentLength) > maxArchiveSize) {
+                return 413;
+            }
+        } catch (NumberFormatException e) {
+            return 400;
+        }
+
+        Path upload = temporaryDirectory.resolve(UUID.randomUUID().toString());
+        try (InputStream body = exchange.getRequestBody()) {
+            try (OutputStream out = Files.newOutputStream(upload)) {
+                byte[] buffer = new byte[bufferSize];
+                long size = 0;
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                    size += read;
+                    if (size > maxArchiveSize) {
+                        return 413;
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            // Linking fails if the key exists, so concurrent uploads of the same key cannot replace each other
+            Files.createLink(archive, upload);
+            return 201;
+        } catch (FileAlreadyExistsException e) {
+            return 409;
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.exbio.pipejar.cache;
+
+import org.exbio.pipejar.util.FileManagement;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A content-addressed store of step outputs, shared between working directories.
+ * <p>
+ * Every entry is a copy of an output directory, stored under a key that identifies the step, its configs and its
+ * inputs. Restoring an entry hard links its files into the output directory, or copies them if linking is not possible.
+ * The store is limited in size; the entries used least recently are evicted first.
+ * <p>
+ * New entries are assembled in a temporary directory and moved into place atomically, so that concurrent processes
+ * never see partial entries.
+ */
+public class OutputCache implements StepCache {
+    private static final String contentName = "content";
+    private static final String sizeName = "size";
+
+    private final File directory;
+    private final File temporaryDirectory;
+    private final long maxBytes;
+
+    /**
+     * @param directory the directory of the store, created if necessary
+     * @param maxBytes  the maximum total size of all entries
+     */
+    public OutputCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.temporaryDirectory = new File(directory, ".tmp");
+        this.maxBytes = maxBytes;
+        FileManagement.makeSureDirectoryExists(temporaryDirectory);
+    }
+
+    public boolean contains(String key) {
+        return new File(getEntry(key), sizeName).isFile();
+    }
+
+    @Override
+    public boolean restore(String key, File target) throws IOException {
+        File entry = getEntry(key);
+        File content = new File(entry, contentName);
+        if (!contains(key)) {
+            return false;
+        }
+
+        touch(entry);
+        FileManagement.deleteFileStructure(target);
+        FileManagement.makeSureDirectoryExists(target);
+        try {
+            link(content.toPath(), target.toPath());
+        } catch (NoSuchFileException e) {
+            // The entry has been evicted by another process in the meantime
+            FileManagement.deleteFileStructure(target);
+            FileManagement.makeSureDirectoryExists(target);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores a copy of the given directory, unless the key already exists. Evicts the least recently used entries
+     * afterwards if the size limit is exceeded.
+     */
+    @Override
+    public void store(String key, File source) throws IOException {
+        if (contains(key)) {
+            touch(getEntry(key));
+            return;
+        }
+
+        File staging = new File(temporaryDirectory, UUID.randomUUID().toString());
+        try {
+            long size = copy(source.toPath(), new File(staging, contentName).toPath());
+            FileManagement.writeFile(new File(staging, sizeName), String.valueOf(size));
+
+            File entry = getEntry(key);
+            FileManagement.makeSureDirectoryExists(entry.getParentFile());
+            Files.move(staging.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            // Another process stored the same key in the meantime
+        } finally {
+            FileManagement.deleteFileStructure(staging);
+        }
+
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the total size is within the limit.
+     */
+    public synchronized void evict() throws IOException {
+        List<File> entries = new ArrayList<>();
+        File[] shards = directory.listFiles(file -> file.isDirectory() && !file.equals(temporaryDirectory));
+        if (shards != null) {
+            for (File shard : shards) {
+                File[] shardEntries = shard.listFiles(File::isDirectory);
+                if (shardEntries != null) {
+                    entries.addAll(Arrays.asList(shardEntries));
+                }
+            }
+        }
+
+        Map<File, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (File entry : entries) {
+            long size = readSize(entry);
+            sizes.put(entry, size);
+            total += size;
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            // Rename first, so that no other process restores a partially deleted entry
+            File doomed = new File(temporaryDirectory, UUID.randomUUID().toString());
+            try {
+                Files.move(entry.toPath(), doomed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            FileManagement.deleteFileStructure(doomed);
+            total -= sizes.get(entry);
+        }
+    }
+
+    private File getEntry(String key) {
+        return new File(new File(directory, key.substring(0, Math.min(2, key.length()))), key);
+    }
+
+    private static long readSize(File entry) {
+        try {
+            return Long.parseLong(FileManagement.readFile(new File(entry, sizeName)).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The modification time of an entry marks its last use.
+     */
+    private static void touch(File entry) {
+        entry.setLastModified(System.currentTimeMillis());
+    }
+
+    private static long copy(Path source, Path target) throws IOException {
+        long[] size = {0};
+        Files.walkFileTree(source, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                        Files.createDirectories(target.resolve(source.relativize(dir)));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (attrs.isRegularFile()) {
+                            FileManagement.copyFile(file.toFile(), target.resolve(source.relativize(file)).toFile());
+                            size[0] += attrs.size();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        return size[0];
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path linked = target.resolve(source.relativize(file));
+                try {
+                    Files.createLink(linked, file);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    if (e instanceof NoSuchFileException noSuchFile) {
+                        throw noSuchFile;
+                    }
+                    FileManagement.copyFile(file.toFile(), linked.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
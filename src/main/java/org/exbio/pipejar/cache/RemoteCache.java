@@ -0,0 +1,99 @@
+package org.exbio.pipejar.cache;
+
+import org.exbio.pipejar.util.FileManagement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * A client for a remote store of step outputs, e.g. a {@link CacheServer}.
+ * <p>
+ * Outputs are transferred as zip archives: {@code GET <endpoint>/cas/<key>} downloads the archive of a key or responds
+ * with 404 if the key is unknown, {@code PUT <endpoint>/cas/<key>} uploads it. An upload of a key that is already
+ * stored may be rejected with 409, which is not an error since the stored archive has the same content.
+ */
+public class RemoteCache implements StepCache {
+    private static final Duration timeout = Duration.ofSeconds(10);
+
+    private final URI endpoint;
+    private final HttpClient client;
+
+    /**
+     * @param endpoint the base address of the cache, e.g. http://localhost:8080
+     */
+    public RemoteCache(URI endpoint) {
+        this.endpoint = endpoint;
+        this.client = HttpClient.newBuilder().connectTimeout(timeout).followRedirects(
+                HttpClient.Redirect.NORMAL).build();
+    }
+
+    @Override
+    public boolean restore(String key, File target) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(getAddress(key)).timeout(timeout).GET().build();
+        HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+
+        try (InputStream body = response.body()) {
+            if (response.statusCode() == 404) {
+                return false;
+            }
+            checkStatus(response, key);
+
+            FileManagement.deleteFileStructure(target);
+            FileManagement.makeSureDirectoryExists(target);
+            Archives.unpack(body, target);
+        }
+        return true;
+    }
+
+    @Override
+    public void store(String key, File source) throws IOException {
+        Path archive = Files.createTempFile("pipejar-", ".zip");
+        try {
+            try (OutputStream stream = Files.newOutputStream(archive)) {
+                Archives.pack(source, stream);
+            }
+
+            HttpRequest request = HttpRequest.newBuilder(getAddress(key)).header("Content-Type", "application/zip")
+                    .PUT(HttpRequest.BodyPublishers.ofFile(archive)).build();
+            HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 409) {
+                checkStatus(response, key);
+            }
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private URI getAddress(String key) {
+        String base = endpoint.toString();
+        return URI.create(base + (base.endsWith("/") ? "" : "/") + "cas/" + key);
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (ConnectException e) {
+            throw new IOException("Could not connect to remote cache: " + endpoint, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while accessing remote cache", e);
+        }
+    }
+
+    private static void checkStatus(HttpResponse<?> response, String key) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException(
+                    "Remote cache responded with status " + response.statusCode() + " for " + key);
+        }
+    }
+}
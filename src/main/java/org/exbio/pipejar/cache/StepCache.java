@@ -0,0 +1,21 @@
+package org.exbio.pipejar.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A store of step outputs, addressed by a key that identifies the step, its configs and its inputs.
+ */
+public interface StepCache {
+    /**
+     * Replaces the content of the target directory by the outputs stored under the given key.
+     *
+     * @return true if the key exists and the outputs have been restored, otherwise false
+     */
+    boolean restore(String key, File target) throws IOException;
+
+    /**
+     * Stores the content of the given directory under the given key.
+     */
+    void store(String key, File source) throws IOException;
+}
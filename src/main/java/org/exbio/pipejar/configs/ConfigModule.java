@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exbio.pipejar.configs.ConfigTypes.InputTypes.InputConfig;
 import org.exbio.pipejar.pipeline.ExecutionManager;
+import org.exbio.pipejar.util.FieldCache;
 import org.exbio.pipejar.util.FileManagement;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -58,8 +59,7 @@ public abstract class ConfigModule {
     private void initSubmodules()
             throws NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
         // Get all fields inside the class extending the ConfigModule class
-        Field[] fields = this.getClass().getFields();
-        for (Field field : fields) {
+        for (Field field : FieldCache.getFields(this.getClass())) {
             Class<?> superClass = field.getType().getSuperclass();
 
             // If the field superclass is ConfigModule, then it is a submodule
@@ -81,8 +81,7 @@ public abstract class ConfigModule {
      */
     private void registerEntries() throws IllegalAccessException {
         // Get all fields of the class extending AbstractModule
-        Field[] fields = this.getClass().getFields();
-        for (Field field : fields) {
+        for (Field field : FieldCache.getFields(this.getClass())) {
             // Check if the field is a Config
             if (InputConfig.class.isAssignableFrom(field.getType())) {
                 // Add the config to the entry map
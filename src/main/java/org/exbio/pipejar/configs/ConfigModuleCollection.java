@@ -2,6 +2,7 @@ package org.exbio.pipejar.configs;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exbio.pipejar.util.FieldCache;
 import org.exbio.pipejar.util.FileManagement;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -30,8 +31,7 @@ public abstract class ConfigModuleCollection {
 
     public void init() {
         // Iterate all the fields inside this class
-        Field[] fields = this.getClass().getDeclaredFields();
-        for (Field field : fields) {
+        for (Field field : FieldCache.getDeclaredFields(this.getClass())) {
             Class<?> superClass = field.getType().getSuperclass();
 
             // Check if the field extends AbstractModule
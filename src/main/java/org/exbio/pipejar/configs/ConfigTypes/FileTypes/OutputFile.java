@@ -1,15 +1,18 @@
 package org.exbio.pipejar.configs.ConfigTypes.FileTypes;
 
 import org.exbio.pipejar.pipeline.DependencyManager;
+import org.exbio.pipejar.util.CompressedFile;
+import org.exbio.pipejar.util.Compression;
 
 import java.io.File;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class OutputFile extends File {
-    private final Collection<DependencyManager> listeners = new HashSet<>();
-    private states state = states.Pending;
+public class OutputFile extends File implements CompressedFile {
+    private final Collection<DependencyManager> listeners = ConcurrentHashMap.newKeySet();
+    private volatile states state = states.Pending;
     private boolean registered = false;
+    private volatile Compression compression = Compression.NONE;
 
     public OutputFile(String pathname) {
         super(pathname);
@@ -33,7 +36,20 @@ public class OutputFile extends File {
 
     public void setState(states state) {
         this.state = state;
-        listeners.forEach(DependencyManager::notifyUpdate);
+        listeners.forEach(listener -> listener.notifyUpdate(this));
+    }
+
+    @Override
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the codec used when the framework writes this file. Readers of the framework detect compressed content
+     * automatically.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
     }
 
     public void addListener(DependencyManager dependencyManager) {
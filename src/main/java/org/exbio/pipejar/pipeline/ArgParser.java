@@ -1,13 +1,27 @@
 package org.exbio.pipejar.pipeline;
 
 import org.apache.commons.cli.*;
+import org.exbio.pipejar.util.HashAlgorithm;
 
 import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
 
 public class ArgParser {
     private final File configFile;
     private final File workingDirectory;
     private final Integer threadNumber;
+    private final boolean virtualThreads;
+    private final boolean failFast;
+    private final boolean singlePass;
+    private final boolean fingerprintCache;
+    private final boolean paranoid;
+    private final HashAlgorithm hashAlgorithm;
+    private final File outputCacheDirectory;
+    private final long outputCacheSize;
+    private final URI remoteCache;
+    private final boolean plan;
+    private final boolean asyncDeletion;
 
     public ArgParser(String[] args) throws ParseException {
         Options options = new Options();
@@ -26,6 +40,51 @@ public class ArgParser {
         opt_threads.setRequired(true);
         options.addOption(opt_threads);
 
+        Option opt_virtualThreads = new Option("v", "virtual-threads", false,
+                "[OPT]: run step coordination and process waiting on virtual threads (requires Java 21)");
+        options.addOption(opt_virtualThreads);
+
+        Option opt_failFast = new Option("f", "fail-fast", false,
+                "[OPT]: cancel the remaining work of a step and its dependent steps as soon as a callable fails");
+        options.addOption(opt_failFast);
+
+        Option opt_singlePass = new Option("s", "single-pass", false,
+                "[OPT]: execute every step right after its simulation instead of simulating the whole workflow first");
+        options.addOption(opt_singlePass);
+
+        Option opt_fingerprintCache = new Option(null, "fingerprint-cache", false,
+                "[OPT]: reuse digests of files whose inode, size and timestamps did not change since they were hashed");
+        options.addOption(opt_fingerprintCache);
+
+        Option opt_paranoid = new Option(null, "paranoid", false,
+                "[OPT]: hash all files again even if a cached digest exists (implies --fingerprint-cache)");
+        options.addOption(opt_paranoid);
+
+        Option opt_hashAlgorithm = new Option(null, "hash-algorithm", true,
+                "[OPT]: algorithm for hashing inputs and outputs, one of " +
+                        Arrays.toString(HashAlgorithm.values()) + " (default: MD5)");
+        options.addOption(opt_hashAlgorithm);
+
+        Option opt_outputCache = new Option(null, "output-cache", true,
+                "[OPT]: directory of an output cache shared between working directories");
+        options.addOption(opt_outputCache);
+
+        Option opt_outputCacheSize = new Option(null, "output-cache-size", true,
+                "[OPT]: size limit of the output cache in GB (default: 50)");
+        options.addOption(opt_outputCacheSize);
+
+        Option opt_remoteCache = new Option(null, "remote-cache", true,
+                "[OPT]: address of a remote cache shared between machines, e.g. http://cache-host:8080");
+        options.addOption(opt_remoteCache);
+
+        Option opt_plan = new Option(null, "plan", false,
+                "[OPT]: only print which steps would be executed and why, without modifying the output directory");
+        options.addOption(opt_plan);
+
+        Option opt_asyncDeletion = new Option(null, "async-deletion", false,
+                "[OPT]: move outdated outputs aside and delete them in the background");
+        options.addOption(opt_asyncDeletion);
+
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd;
 
@@ -35,15 +94,105 @@ public class ArgParser {
             configFile = new File(cmd.getOptionValue("config"));
             workingDirectory = new File(cmd.getOptionValue("output-directory"));
             threadNumber = Integer.parseInt(cmd.getOptionValue("thread-count"));
+            virtualThreads = cmd.hasOption("virtual-threads");
+            failFast = cmd.hasOption("fail-fast");
+            singlePass = cmd.hasOption("single-pass");
+            paranoid = cmd.hasOption("paranoid");
+            fingerprintCache = paranoid || cmd.hasOption("fingerprint-cache");
+            hashAlgorithm = parseHashAlgorithm(cmd.getOptionValue("hash-algorithm", HashAlgorithm.MD5.name()));
+            outputCacheDirectory =
+                    cmd.hasOption("output-cache") ? new File(cmd.getOptionValue("output-cache")) : null;
+            outputCacheSize = parseCacheSize(cmd.getOptionValue("output-cache-size", "50"));
+            remoteCache = cmd.hasOption("remote-cache") ? parseRemoteCache(cmd.getOptionValue("remote-cache")) : null;
+            plan = cmd.hasOption("plan");
+            asyncDeletion = cmd.hasOption("async-deletion");
         } catch (ParseException e) {
             throw new ParseException("Failed to parse command line properties\n" + e.getMessage() + "\n" + options);
         }
     }
 
+    private static HashAlgorithm parseHashAlgorithm(String name) throws ParseException {
+        try {
+            return HashAlgorithm.valueOf(name.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Unknown hash algorithm: " + name);
+        }
+    }
+
+    /**
+     * @param gigabytes the cache size in GB, fractions allowed
+     * @return the cache size in bytes
+     */
+    private static long parseCacheSize(String gigabytes) throws ParseException {
+        try {
+            double size = Double.parseDouble(gigabytes);
+            if (size >= 0 && Double.isFinite(size)) {
+                return (long) (size * 1e9);
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new ParseException("Invalid output cache size: " + gigabytes);
+    }
+
+    private static URI parseRemoteCache(String uri) throws ParseException {
+        try {
+            URI parsed = URI.create(uri);
+            if (("http".equals(parsed.getScheme()) || "https".equals(parsed.getScheme())) && parsed.getHost() != null) {
+                return parsed;
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        throw new ParseException("Invalid remote cache URI: " + uri);
+    }
+
     public Integer getThreadNumber() {
         return threadNumber;
     }
 
+    public boolean useVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public boolean useFailFast() {
+        return failFast;
+    }
+
+    public boolean useSinglePass() {
+        return singlePass;
+    }
+
+    public boolean useFingerprintCache() {
+        return fingerprintCache;
+    }
+
+    public boolean isParanoid() {
+        return paranoid;
+    }
+
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public File getOutputCacheDirectory() {
+        return outputCacheDirectory;
+    }
+
+    public long getOutputCacheSize() {
+        return outputCacheSize;
+    }
+
+    public URI getRemoteCache() {
+        return remoteCache;
+    }
+
+    public boolean isPlan() {
+        return plan;
+    }
+
+    public boolean useAsyncDeletion() {
+        return asyncDeletion;
+    }
+
     public File getConfigFile() {
         return configFile;
     }
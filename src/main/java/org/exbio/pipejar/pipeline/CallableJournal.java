@@ -0,0 +1,151 @@
+package org.exbio.pipejar.pipeline;
+
+import org.apache.logging.log4j.Logger;
+import org.exbio.pipejar.util.AppendSink;
+import org.exbio.pipejar.util.FileManagement;
+import org.exbio.pipejar.util.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Records the finished {@link KeyedCallable}s of a step together with a fingerprint of the step's configs and the
+ * callables' inputs and outputs.
+ * <p>
+ * Every finished callable is appended right away, so that the records survive an aborted execution. Later records
+ * of the same key replace earlier ones. The journal has to be closed once all callables have finished.
+ */
+class CallableJournal {
+    private final File journalFile;
+    private final Logger logger;
+    private final Map<String, String> recorded = new ConcurrentHashMap<>();
+    private final Map<String, String> confirmed = new ConcurrentHashMap<>();
+    private final AtomicLong reused = new AtomicLong();
+    private volatile AppendSink sink;
+    private volatile String configHash = "";
+
+    CallableJournal(File journalFile, Logger logger) {
+        this.journalFile = journalFile;
+        this.logger = logger;
+    }
+
+    /**
+     * Loads the records of earlier executions. Callables are only reused if they finished with the given configs.
+     */
+    void load(String configHash) {
+        this.configHash = configHash;
+        recorded.clear();
+        confirmed.clear();
+        reused.set(0);
+
+        if (!journalFile.exists()) {
+            return;
+        }
+        try {
+            FileManagement.readLines(journalFile).stream().map(line -> line.split("\t")).filter(
+                    entry -> entry.length == 2).forEach(entry -> recorded.put(entry[0], entry[1]));
+            logger.debug("Loaded " + recorded.size() + " finished callable(s) from journal.");
+        } catch (IOException e) {
+            logger.warn("Could not read callable journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wraps the callable, so that it is skipped if it has already been finished with the same key and configs, and
+     * neither its inputs nor its outputs changed since.
+     */
+    Callable<Boolean> memoize(KeyedCallable callable) {
+        return () -> {
+            String key = Hashing.hash(callable.getKey());
+            String recordedFingerprint = recorded.get(key);
+
+            if (recordedFingerprint != null && recordedFingerprint.equals(fingerprint(callable))) {
+                confirmed.put(key, recordedFingerprint);
+                reused.incrementAndGet();
+                return true;
+            }
+
+            boolean successful = callable.call();
+            if (successful) {
+                record(key, fingerprint(callable));
+            }
+            return successful;
+        };
+    }
+
+    boolean exists() {
+        return journalFile.exists();
+    }
+
+    void delete() throws IOException {
+        close();
+        FileManagement.deleteFileStructure(journalFile);
+    }
+
+    long getReused() {
+        return reused.get();
+    }
+
+    /**
+     * Rewrites the journal with only the records confirmed during the current execution.
+     */
+    void compact() throws IOException {
+        close();
+        String content = confirmed.entrySet().stream().map(entry -> entry.getKey() + "\t" + entry.getValue() + "\n")
+                .collect(Collectors.joining());
+        FileManagement.writeFile(journalFile, content);
+    }
+
+    /**
+     * Writes all pending records.
+     */
+    synchronized void close() throws IOException {
+        if (sink != null) {
+            try {
+                sink.close();
+            } finally {
+                sink = null;
+            }
+        }
+    }
+
+    private void record(String key, String fingerprint) throws IOException {
+        confirmed.put(key, fingerprint);
+        getSink().append(key + "\t" + fingerprint + "\n");
+    }
+
+    private AppendSink getSink() throws IOException {
+        AppendSink current = sink;
+        if (current == null) {
+            synchronized (this) {
+                if (sink == null) {
+                    sink = new AppendSink(journalFile);
+                }
+                current = sink;
+            }
+        }
+        return current;
+    }
+
+    private String fingerprint(KeyedCallable callable) throws IOException {
+        StringBuilder builder = new StringBuilder(configHash).append('\n');
+        appendDigests(builder, callable.getInputs());
+        builder.append('\n');
+        appendDigests(builder, callable.getOutputs());
+        return Hashing.hash(builder.toString());
+    }
+
+    private void appendDigests(StringBuilder builder, Collection<File> files) throws IOException {
+        for (File file : files.stream().sorted(Comparator.comparing(File::getAbsolutePath)).toList()) {
+            builder.append(file.getAbsolutePath()).append(':');
+            builder.append(file.exists() ? ExecutionManager.getFileDigester().digest(file) : "-").append(';');
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.exbio.pipejar.pipeline;
+
+import org.exbio.pipejar.configs.ConfigTypes.FileTypes.OutputFile;
+
+import java.util.*;
+
+/**
+ * Calculates the length of the longest remaining downstream chain for every step of a workflow.
+ * <p>
+ * The length of a chain is the sum of the expected durations of its steps. Steps without a known duration are
+ * assumed to take the mean of all known durations.
+ */
+class CriticalPath {
+    private final Map<ExecutableStep<?>, Collection<ExecutableStep<?>>> successors = new HashMap<>();
+    private final Map<ExecutableStep<?>, Collection<ExecutableStep<?>>> predecessors = new HashMap<>();
+    private final Map<ExecutableStep<?>, Long> durations = new HashMap<>();
+
+    CriticalPath(Collection<ExecutableStep<?>> steps) {
+        Map<OutputFile, ExecutableStep<?>> producers = new HashMap<>();
+        steps.forEach(step -> step.getOutputs().forEach(output -> producers.put(output, step)));
+
+        steps.forEach(step -> successors.put(step, new HashSet<>()));
+        steps.forEach(step -> step.getDependencies().stream().map(producers::get).filter(Objects::nonNull).forEach(
+                producer -> {
+                    successors.get(producer).add(step);
+                    predecessors.computeIfAbsent(step, key -> new HashSet<>()).add(producer);
+                }));
+
+        steps.forEach(step -> durations.put(step, step.getExpectedDuration()));
+        long fallback = Math.max(1, Math.round(
+                durations.values().stream().filter(duration -> duration >= 0).mapToLong(Long::longValue).average()
+                        .orElse(1)));
+        durations.replaceAll((step, duration) -> duration >= 0 ? duration : fallback);
+    }
+
+    /**
+     * Get the remaining chain lengths of all steps.
+     * <p>
+     * Steps are visited in reverse topological order, so every step is handled after all of its successors.
+     *
+     * @return a map from each step to the length of the longest chain starting with it
+     */
+    Map<ExecutableStep<?>, Long> getChainLengths() {
+        Map<ExecutableStep<?>, Long> lengths = new HashMap<>();
+        for (ExecutableStep<?> step : getReverseTopologicalOrder()) {
+            long longestSuccessor = successors.get(step).stream().mapToLong(lengths::get).max().orElse(0);
+            lengths.put(step, durations.get(step) + longestSuccessor);
+        }
+
+        // Steps on a cycle can never be executed, only their own duration is considered
+        durations.forEach(lengths::putIfAbsent);
+
+        return lengths;
+    }
+
+    /**
+     * @return all steps not on a cycle, every step after all of the steps it depends on
+     */
+    List<ExecutableStep<?>> getTopologicalOrder() {
+        List<ExecutableStep<?>> order = getReverseTopologicalOrder();
+        Collections.reverse(order);
+        return order;
+    }
+
+    Collection<ExecutableStep<?>> getPredecessors(ExecutableStep<?> step) {
+        return predecessors.getOrDefault(step, Collections.emptySet());
+    }
+
+    private List<ExecutableStep<?>> getReverseTopologicalOrder() {
+        Map<ExecutableStep<?>, Integer> pendingSuccessors = new HashMap<>();
+        successors.forEach((step, stepSuccessors) -> pendingSuccessors.put(step, stepSuccessors.size()));
+
+        Deque<ExecutableStep<?>> ready = new ArrayDeque<>();
+        pendingSuccessors.forEach((step, pending) -> {
+            if (pending == 0) {
+                ready.add(step);
+            }
+        });
+
+        List<ExecutableStep<?>> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            ExecutableStep<?> step = ready.poll();
+            order.add(step);
+
+            getPredecessors(step).forEach(predecessor -> {
+                if (pendingSuccessors.merge(predecessor, -1, Integer::sum) == 0) {
+                    ready.add(predecessor);
+                }
+            });
+        }
+        return order;
+    }
+}
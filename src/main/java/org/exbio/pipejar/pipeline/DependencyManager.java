@@ -4,78 +4,140 @@ import org.exbio.pipejar.configs.ConfigTypes.FileTypes.OutputFile;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Tracks the dependencies of a single step without blocking a thread.
+ * <p>
+ * For every phase (simulation or execution) a countdown is armed over the dependencies. Each {@link OutputFile} state
+ * change is pushed to the listening managers, which decrement their countdown once per dependency. The returned
+ * future completes as soon as all dependencies are satisfied or any of them failed.
+ */
 public class DependencyManager {
     private final Collection<OutputFile> dependencies;
     private final Logger logger;
+    private volatile Countdown countdown;
 
     public DependencyManager(Collection<OutputFile> dependencies, Logger logger) {
         this.dependencies = dependencies;
         this.logger = logger;
+        dependencies.forEach(dependency -> dependency.addListener(this));
     }
 
-    synchronized boolean waitForExecution() {
-        return waitForDependencies(OutputFile.states.Created, OutputFile.states.ErrorDuringCreation, "execution");
+    CompletableFuture<Boolean> awaitExecution() {
+        return arm(EnumSet.of(OutputFile.states.Created),
+                EnumSet.of(OutputFile.states.ErrorDuringCreation, OutputFile.states.WillNotBeCreated), "execution");
     }
 
-    synchronized boolean waitForSimulation() {
-        return waitForDependencies(OutputFile.states.WillBeCreated, OutputFile.states.WillNotBeCreated, "simulation");
+    CompletableFuture<Boolean> awaitSimulation() {
+        return arm(EnumSet.of(OutputFile.states.WillBeCreated, OutputFile.states.Created),
+                EnumSet.of(OutputFile.states.WillNotBeCreated, OutputFile.states.ErrorDuringCreation), "simulation");
     }
 
-    private boolean waitForDependencies(OutputFile.states targetState, OutputFile.states problemState, String process) {
+    private CompletableFuture<Boolean> arm(Set<OutputFile.states> targetStates, Set<OutputFile.states> problemStates,
+                                           String process) {
+        Countdown current = new Countdown(targetStates, problemStates, process);
+
         if (dependencies.isEmpty()) {
-            return true;
+            current.future.complete(true);
+            return current.future;
         }
 
-        boolean successfull;
-
         logger.debug("Waiting for " + dependencies.size() + " " + process +
                 (dependencies.size() == 1 ? " dependency." : " dependencies."));
 
-        while (!((successfull = allMatch(targetState)) || anyMatch(problemState) ||
-                dependencies.stream().anyMatch(OutputFile::isNotRegistered))) {
-            try {
-                this.wait();
-            } catch (InterruptedException | IllegalMonitorStateException e) {
-                logger.warn(e.getMessage());
-                throw new RuntimeException(e);
-            }
+        if (dependencies.stream().anyMatch(OutputFile::isNotRegistered)) {
+            current.finish(false);
+            return current.future;
         }
 
-        if (successfull) {
-            logger.debug("All dependencies finished their " + process + " successfully.");
-        } else {
-            logger.warn("There were problems with " + process + " dependencies:");
-            dependencies.forEach(dependency -> {
-                if (dependency.isNotRegistered()) {
-                    logger.warn("\t" + dependency.getAbsolutePath() +
-                            " will not be generated because its creation step will not be executed.");
-                }
-                if (dependency.getState().equals(OutputFile.states.ErrorDuringCreation)) {
-                    logger.warn("\t" + dependency.getAbsolutePath() + " had an error during creation.");
-                }
-                if (dependency.getState().equals(OutputFile.states.WillNotBeCreated)) {
-                    logger.warn("\t" + dependency.getAbsolutePath() +
-                            " will not be generated because of a certain config situation.");
-                }
-            });
-        }
-        return successfull;
-    }
+        // Publish the countdown before scanning, so that no update can slip through between scan and publication.
+        // Updates arriving in the meantime are deduplicated by the countdown itself.
+        countdown = current;
+        dependencies.forEach(current::update);
 
-    private boolean allMatch(OutputFile.states state) {
-        return dependencies.stream().allMatch(dependency -> dependency.getState().equals(state));
+        return current.future;
     }
 
-    private boolean anyMatch(OutputFile.states state) {
-        return dependencies.stream().anyMatch(dependency -> dependency.getState().equals(state));
+    public void notifyUpdate(OutputFile dependency) {
+        Countdown current = countdown;
+        if (current != null) {
+            current.update(dependency);
+        }
     }
 
-    public synchronized void notifyUpdate() {
-        this.notifyAll();
+    /**
+     * @return true if any dependency will not be created, independent of errors during execution
+     */
+    boolean anyWillNotBeCreated() {
+        return dependencies.stream().anyMatch(dependency -> dependency.isNotRegistered() ||
+                dependency.getState().equals(OutputFile.states.WillNotBeCreated));
     }
 
     Collection<OutputFile> getDependencies() {
         return dependencies;
     }
+
+    private void logProblems(String process) {
+        logger.warn("There were problems with " + process + " dependencies:");
+        dependencies.forEach(dependency -> {
+            if (dependency.isNotRegistered()) {
+                logger.warn("\t" + dependency.getAbsolutePath() +
+                        " will not be generated because its creation step will not be executed.");
+            }
+            if (dependency.getState().equals(OutputFile.states.ErrorDuringCreation)) {
+                logger.warn("\t" + dependency.getAbsolutePath() + " had an error during creation.");
+            }
+            if (dependency.getState().equals(OutputFile.states.WillNotBeCreated)) {
+                logger.warn("\t" + dependency.getAbsolutePath() +
+                        " will not be generated because of a certain config situation.");
+            }
+        });
+    }
+
+    private class Countdown {
+        private final Set<OutputFile.states> targetStates, problemStates;
+        private final String process;
+        private final Set<OutputFile> satisfied = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger remaining = new AtomicInteger(dependencies.size());
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private Countdown(Set<OutputFile.states> targetStates, Set<OutputFile.states> problemStates,
+                          String process) {
+            this.targetStates = targetStates;
+            this.problemStates = problemStates;
+            this.process = process;
+        }
+
+        private void update(OutputFile dependency) {
+            // Inputs that are not dependencies of the step are observed as well, but must not count
+            if (future.isDone() || !dependencies.contains(dependency)) {
+                return;
+            }
+
+            OutputFile.states state = dependency.getState();
+            if (problemStates.contains(state)) {
+                finish(false);
+            } else if (targetStates.contains(state) && satisfied.add(dependency) &&
+                    remaining.decrementAndGet() == 0) {
+                finish(true);
+            }
+        }
+
+        private void finish(boolean successful) {
+            if (!future.complete(successful)) {
+                return;
+            }
+
+            if (successful) {
+                logger.debug("All dependencies finished their " + process + " successfully.");
+            } else {
+                logProblems(process);
+            }
+        }
+    }
 }
@@ -2,32 +2,52 @@ package org.exbio.pipejar.pipeline;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exbio.pipejar.cache.StepCache;
 import org.exbio.pipejar.configs.ConfigModuleCollection;
 import org.exbio.pipejar.configs.ConfigTypes.FileTypes.InputFile;
 import org.exbio.pipejar.configs.ConfigTypes.FileTypes.OutputFile;
 import org.exbio.pipejar.configs.ConfigTypes.UsageTypes.UsageConfig;
+import org.exbio.pipejar.util.AppendSink;
+import org.exbio.pipejar.util.Compression;
+import org.exbio.pipejar.util.DigestingChannel;
+import org.exbio.pipejar.util.DigestingOutputStream;
 import org.exbio.pipejar.util.ExecutionTimeMeasurement;
+import org.exbio.pipejar.util.FieldCache;
 import org.exbio.pipejar.util.FileManagement;
+import org.exbio.pipejar.util.HashAlgorithm;
+import org.exbio.pipejar.util.Hashing;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
 
 import static org.exbio.pipejar.util.FileManagement.deleteFileStructure;
 import static org.exbio.pipejar.util.FileManagement.makeSureDirectoryExists;
 
 public abstract class ExecutableStep<C extends ConfigModuleCollection> implements EventListener {
     private static boolean acceptAllInputs = false;
+    private static final ClassValue<List<Field>> configFields = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            List<Field> fields = FieldCache.getDeclaredFields(type).stream().filter(
+                    field -> field.getType().getSuperclass() != null &&
+                            field.getType().getSuperclass().equals(UsageConfig.class)).toList();
+            fields.forEach(field -> field.setAccessible(true));
+            return fields;
+        }
+    };
     /**
      * The logger of this ExecutableStep.
      */
@@ -36,10 +56,22 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
     protected final C configs;
     private final DependencyManager dependencyManager;
     private final HashManager hashManager;
+    private final File durationFile;
     private final Collection<OutputFile> outputs = new HashSet<>();
     private final Collection<InputFile> inputs = new HashSet<>();
+    private final Collection<OutputFile> published = ConcurrentHashMap.newKeySet();
+    private final Map<File, AppendSink> appendSinks = new ConcurrentHashMap<>();
+    /**
+     * Inputs are only created once the simulation starts, so that building a workflow does not modify the working
+     * directory.
+     */
+    private final List<PendingInput> pendingInputs = new ArrayList<>();
+    private boolean inputsCreated = false;
     private boolean underDevelopment = false;
     private boolean skip = false;
+    private boolean resume = false;
+    private long priority = 0;
+    private volatile Collection<UsageConfig<?>> usageConfigs = null;
 
     protected ExecutableStep(C configs, boolean add, OutputFile... dependencies) {
         this(configs, add, new HashSet<>(), dependencies);
@@ -69,17 +101,9 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
         inputDirectory = new OutputFile(workingDirectory, "input");
         outputDirectory = new OutputFile(workingDirectory, "output");
 
-        try {
-            deleteFileStructure(inputDirectory);
-            makeSureDirectoryExists(workingDirectory);
-            makeSureDirectoryExists(inputDirectory);
-            makeSureDirectoryExists(outputDirectory);
-        } catch (IOException e) {
-            logger.warn("Could not create working directory: " + e.getMessage());
-        }
-
         dependencyManager = new DependencyManager(combined, logger);
         hashManager = new HashManager(workingDirectory, logger, inputDirectory, outputDirectory);
+        durationFile = new File(workingDirectory, ".duration");
 
         if (add) {
             combined.forEach(this::addInput);
@@ -104,39 +128,198 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
      *
      * @return true if the simulation was successful, otherwise false.
      */
-    Future<Boolean> simulate() {
-        return ExecutionManager.submitEasyTask(() -> {
-            if (!dependencyManager.waitForSimulation()) {
-                return false;
+    CompletableFuture<Boolean> simulate() {
+        return propagateFailure(ExecutionManager.submitEasyTaskWhenReady(dependencyManager.awaitSimulation(),
+                this::runSimulation, () -> markOutputsAs(OutputFile.states.WillNotBeCreated)),
+                OutputFile.states.WillNotBeCreated);
+    }
+
+    private boolean runSimulation() throws IOException {
+        logger.trace("Simulation starting.");
+        prepareWorkingDirectory();
+
+        if (checkRequirements()) {
+            logger.debug("Simulation successful.");
+            hashManager.unregisterOutputs();
+            // Validate before releasing dependent steps, so that they can reuse the hashes of skipped outputs
+            if (!underDevelopment && mayBeSkipped() && ExecutionManager.isHashingEnabled() &&
+                    hashManager.validateHashes(getConfigs(), acceptAllInputs)) {
+                skip = true;
+            } else if (isJournaled() && hashManager.getCallableJournal().exists()) {
+                logger.debug("Keeping outputs of finished callables.");
+                resume = true;
+                makeSureDirectoryExists(outputDirectory);
+            } else {
+                ExecutionManager.deleteOutputs(outputDirectory);
+                makeSureDirectoryExists(outputDirectory);
             }
+            markOutputsAs(OutputFile.states.WillBeCreated);
+            boolean result = createFiles();
+            logger.trace(result ? "Successfully finished creating files." : "Failed to create files.");
+            return result;
+        } else {
+            logger.warn("Simulation failed.");
+            markOutputsAs(OutputFile.states.WillNotBeCreated);
+            return false;
+        }
+    }
 
-            logger.trace("Simulation starting.");
-
-            if (checkRequirements()) {
-                logger.debug("Simulation successful.");
-                markOutputsAs(OutputFile.states.WillBeCreated);
-                if (!underDevelopment && mayBeSkipped() && ExecutionManager.isHashingEnabled() &&
-                        hashManager.validateHashes(getConfigs(), acceptAllInputs)) {
-                    skip = true;
-                } else {
-                    deleteFileStructure(outputDirectory);
-                    makeSureDirectoryExists(outputDirectory);
+    /**
+     * Decides whether this executableStep would be executed, without modifying any file.
+     *
+     * @param upstreamRerun the name of a rerunning step this executableStep depends on, or null if there is none
+     * @return why the executableStep would be executed or null if it would be skipped
+     */
+    String findRerunReason(String upstreamRerun) {
+        if (!checkRequirements()) {
+            return "Requirements not met";
+        }
+        if (underDevelopment) {
+            return "Under development";
+        }
+        if (!mayBeSkipped()) {
+            return "Not skippable";
+        }
+        if (!ExecutionManager.isHashingEnabled()) {
+            return "Hashing disabled";
+        }
+        if (upstreamRerun != null && !acceptAllInputs) {
+            return "Upstream step reruns: " + upstreamRerun;
+        }
+        return findChangeOfPlannedInputs();
+    }
+
+    /**
+     * Creates the inputs in a temporary directory outside the working directory and compares them to the recorded
+     * hashes, so that planning does not modify the working directory.
+     */
+    private String findChangeOfPlannedInputs() {
+        File plannedDirectory = null;
+        try {
+            plannedDirectory = Files.createTempDirectory("pipejar-plan-").toFile();
+            File plannedInputs = new File(plannedDirectory, inputDirectory.getName());
+            makeSureDirectoryExists(plannedInputs);
+            createInputs(plannedInputs);
+            String change = hashManager.findChange(getConfigs(), acceptAllInputs, plannedInputs);
+            return change == null ? null : change.replace(plannedInputs.getPath(), inputDirectory.getPath());
+        } catch (IOException e) {
+            return "Could not create inputs: " + e.getMessage();
+        } finally {
+            if (plannedDirectory != null) {
+                try {
+                    deleteFileStructure(plannedDirectory);
+                } catch (IOException e) {
+                    logger.warn("Could not delete " + plannedDirectory.getAbsolutePath() + ": " + e.getMessage());
                 }
-                boolean result = createFiles();
-                logger.trace(result ? "Successfully finished creating files." : "Failed to create files.");
-                return result;
+            }
+        }
+    }
+
+    /**
+     * Recreates the input directory with the current inputs and creates the output directory.
+     */
+    private void prepareWorkingDirectory() {
+        try {
+            deleteFileStructure(inputDirectory);
+            makeSureDirectoryExists(inputDirectory);
+            makeSureDirectoryExists(outputDirectory);
+            synchronized (pendingInputs) {
+                createInputs(inputDirectory);
+                inputsCreated = true;
+            }
+        } catch (IOException e) {
+            logger.warn("Could not create working directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the inputs added so far in the given directory, which takes the place of the input directory.
+     * Inputs outside the input directory are only created if the given directory is the input directory.
+     */
+    private void createInputs(File directory) {
+        Path root = inputDirectory.toPath().toAbsolutePath();
+        synchronized (pendingInputs) {
+            for (PendingInput input : pendingInputs) {
+                Path relative = root.relativize(input.file().toPath().toAbsolutePath());
+                if (relative.startsWith("..") && !directory.equals(inputDirectory)) {
+                    continue;
+                }
+                createInput(new File(directory, relative.toString()), input);
+            }
+        }
+    }
+
+    private void createInput(File file, PendingInput input) {
+        try {
+            if (input.linkTarget() != null) {
+                FileManagement.softLink(file, input.linkTarget());
             } else {
-                logger.warn("Simulation failed.");
+                makeSureDirectoryExists(file.getParentFile());
+                Files.write(file.toPath(), input.content());
+            }
+        } catch (IOException e) {
+            logger.warn("Could not create input " + file.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Simulates and directly executes this executableStep as soon as all of its dependencies have been created.
+     * <p>
+     * Used by the single pass mode of the {@link ExecutionManager}. Since the dependencies are final at this point,
+     * the hash validation during simulation already sees the new inputs.
+     *
+     * @return true if simulation and execution were successful, otherwise false.
+     */
+    CompletableFuture<Boolean> simulateAndExecute() {
+        return propagateFailure(ExecutionManager.submitEasyTaskWhenReady(dependencyManager.awaitExecution(), () -> {
+            if (!runSimulation()) {
                 markOutputsAs(OutputFile.states.WillNotBeCreated);
                 return false;
             }
+            return runExecution();
+        }, () -> markOutputsAs(dependencyManager.anyWillNotBeCreated() ? OutputFile.states.WillNotBeCreated :
+                OutputFile.states.ErrorDuringCreation)), OutputFile.states.ErrorDuringCreation);
+    }
+
+    /**
+     * Makes sure that dependent steps are released if the given step future fails with an exception.
+     */
+    private CompletableFuture<Boolean> propagateFailure(CompletableFuture<Boolean> result,
+                                                        OutputFile.states problemState) {
+        result.whenComplete((successful, throwable) -> {
+            if (throwable != null) {
+                logger.warn(throwable.getMessage());
+                markOutputsAs(problemState);
+            }
         });
+        return result;
     }
 
+    /**
+     * Marks all outputs with the given state. Outputs that have already been published keep their created state.
+     */
     private void markOutputsAs(OutputFile.states state) {
         if (!outputs.isEmpty()) {
             logger.trace("Marking outputs as " + state);
-            outputs.forEach(output -> output.setState(state));
+            outputs.stream().filter(output -> !published.contains(output)).forEach(output -> output.setState(state));
+        }
+    }
+
+    /**
+     * Marks a single output as created before all callables of this executableStep have finished.
+     * <p>
+     * Call this from a callable as soon as the output has been written completely. Steps that only depend on
+     * published outputs are started right away instead of waiting for the whole executableStep.
+     *
+     * @param output an output of this executableStep
+     */
+    protected void publish(OutputFile output) {
+        if (!outputs.contains(output)) {
+            throw new IllegalArgumentException("Can only publish outputs of this step: " + output.getAbsolutePath());
+        }
+        if (published.add(output)) {
+            logger.trace("Publishing output: " + output.getAbsolutePath());
+            output.setState(OutputFile.states.Created);
         }
     }
 
@@ -184,78 +367,277 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
      * Skips the executableStep if developmentMode is not active and valid hashes are found.
      * Stores new hashes if the executableStep has been executed and developmentMode is disabled.
      */
-    Future<Boolean> execute() {
-        return ExecutionManager.submitEasyTask(() -> {
-            if (!dependencyManager.waitForExecution()) {
-                return false;
-            }
+    CompletableFuture<Boolean> execute() {
+        return propagateFailure(ExecutionManager.submitEasyTaskWhenReady(dependencyManager.awaitExecution(),
+                this::runExecution, () -> markOutputsAs(OutputFile.states.ErrorDuringCreation)),
+                OutputFile.states.ErrorDuringCreation);
+    }
 
-            ExecutionTimeMeasurement timer = new ExecutionTimeMeasurement();
+    private boolean runExecution() throws IOException, InterruptedException {
+        ExecutionTimeMeasurement timer = new ExecutionTimeMeasurement();
 
-            boolean successful;
+        boolean successful;
+        String cacheKey = skip ? null : getStepCacheKey();
 
-            if (!skip) {
-                logger.info("Fetching callables.");
-                Collection<Callable<Boolean>> callables = getCallables();
+        if (skip) {
+            successful = true;
+            logger.debug("Skipped execution since hash is valid.");
+        } else if (cacheKey != null && restoreFromStepCaches(cacheKey)) {
+            successful = true;
+        } else {
+            logger.info("Fetching callables.");
 
-                if (callables == null || callables.size() == 0) {
+            try (Stream<Callable<Boolean>> callables = streamCallables()) {
+                Iterator<Callable<Boolean>> iterator = callables == null ? null : callables.iterator();
+
+                if (iterator == null || !iterator.hasNext()) {
                     logger.warn("No callables found");
                     markOutputsAs(OutputFile.states.Created);
                     return true;
-                } else {
-                    logger.info("Found " + callables.size() + " callable(s).");
                 }
 
                 logger.debug("Execution starting.");
+                if (isJournaled()) {
+                    hashManager.loadCallableJournal(getConfigs());
+                }
+                successful = false;
+                try {
+                    successful = runCallables(iterator);
+                } finally {
+                    if (!closeAppendSinks()) {
+                        successful = false;
+                    }
+                }
+            }
+
+            if (successful && resume) {
+                logger.info("Reused " + hashManager.getCallableJournal().getReused() + " finished callable(s).");
+            }
+            if (successful && isJournaled()) {
+                hashManager.getCallableJournal().compact();
+            }
+            if (successful) {
+                hashManager.writeHashes(getConfigs());
+                recordDuration(timer.getDeltaMillis());
+                if (cacheKey != null) {
+                    storeInStepCaches(cacheKey, ExecutionManager.getStepCaches());
+                }
+            }
+        }
+
+        logger.info("Finished. Step took " + timer.stopAndGetDeltaFormatted());
+
+        if (successful) {
+            markOutputsAs(OutputFile.states.Created);
+        } else {
+            markOutputsAs(OutputFile.states.ErrorDuringCreation);
+        }
+
+        return successful;
+    }
 
-                successful =
-                        callables.parallelStream().map(ExecutionManager::submitPerformanceTask).allMatch(future -> {
-                            try {
-                                return future.get();
-                            } catch (InterruptedException | ExecutionException e) {
-                                logger.warn(e.getMessage());
-                                return false;
-                            }
-                        });
-
-                if (successful) {
+    /**
+     * @return the key of this executableStep in the step caches or null if no cache is used
+     */
+    private String getStepCacheKey() {
+        if (ExecutionManager.getStepCaches().isEmpty() || underDevelopment || !mayBeSkipped() ||
+                !ExecutionManager.isHashingEnabled()) {
+            return null;
+        }
+        try {
+            return hashManager.getCacheKey(getClass(), getConfigs());
+        } catch (IOException e) {
+            logger.warn("Could not calculate output cache key: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Queries the step caches in order and restores the outputs from the first one containing the key. The caches
+     * queried before are filled with the restored outputs.
+     */
+    private boolean restoreFromStepCaches(String cacheKey) throws IOException {
+        List<StepCache> caches = ExecutionManager.getStepCaches();
+        for (int i = 0; i < caches.size(); i++) {
+            StepCache cache = caches.get(i);
+            try {
+                if (cache.restore(cacheKey, outputDirectory)) {
+                    logger.info("Restored outputs from " + cache.getClass().getSimpleName() + ".");
+                    // Restored files may be hard links into the cache, so they must not be resumed in place
+                    hashManager.getCallableJournal().delete();
                     hashManager.writeHashes(getConfigs());
+                    storeInStepCaches(cacheKey, caches.subList(0, i));
+                    return true;
                 }
-            } else {
-                successful = true;
-                logger.debug("Skipped execution since hash is valid.");
+            } catch (IOException e) {
+                logger.warn("Could not restore outputs from " + cache.getClass().getSimpleName() + ": " +
+                        e.getMessage());
+                deleteFileStructure(outputDirectory);
+                makeSureDirectoryExists(outputDirectory);
             }
+        }
+        // A failed restore may have removed the pre-created output files
+        createFiles();
+        return false;
+    }
 
-            logger.info("Finished. Step took " + timer.stopAndGetDeltaFormatted());
+    private void storeInStepCaches(String cacheKey, List<StepCache> caches) {
+        for (StepCache cache : caches) {
+            try {
+                cache.store(cacheKey, outputDirectory);
+            } catch (IOException e) {
+                logger.warn("Could not store outputs in " + cache.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
 
-            if (successful) {
-                markOutputsAs(OutputFile.states.Created);
+    /**
+     * Submits the callables to the performance pool while keeping at most getMaxCallablesInFlight() of them
+     * submitted but unfinished. New callables are only pulled from the iterator when a slot becomes free.
+     *
+     * @return true if all callables finished successfully, otherwise false
+     */
+    private boolean runCallables(Iterator<Callable<Boolean>> iterator) throws InterruptedException {
+        BlockingQueue<Future<Boolean>> finished = new LinkedBlockingQueue<>();
+        Collection<Future<Boolean>> pending = new HashSet<>();
+        int maxInFlight = Math.max(1, getMaxCallablesInFlight());
+        long submitted = 0;
+        boolean successful = true;
+
+        while (successful && iterator.hasNext()) {
+            if (pending.size() >= maxInFlight) {
+                successful = harvest(finished, pending);
             } else {
-                markOutputsAs(OutputFile.states.ErrorDuringCreation);
+                Callable<Boolean> callable = iterator.next();
+                boolean waiting = callable instanceof WaitingCallable ||
+                        callable instanceof KeyedCallable keyedCallable && keyedCallable.isWaiting();
+                if (isJournaled() && callable instanceof KeyedCallable keyedCallable) {
+                    callable = hashManager.getCallableJournal().memoize(keyedCallable);
+                }
+                pending.add(waiting ? ExecutionManager.submitWaitingTask(callable, priority, finished) :
+                        ExecutionManager.submitPerformanceTask(callable, priority, finished));
+                submitted++;
             }
+        }
 
-            return successful;
-        });
+        if (!successful && ExecutionManager.isFailFastEnabled()) {
+            cancelRemaining(pending);
+        }
+
+        while (!pending.isEmpty()) {
+            boolean result = harvest(finished, pending);
+            if (!result && successful && ExecutionManager.isFailFastEnabled()) {
+                cancelRemaining(pending);
+            }
+            successful = result && successful;
+        }
+
+        logger.info("Executed " + submitted + " callable(s).");
+        return successful;
+    }
+
+    private boolean harvest(BlockingQueue<Future<Boolean>> finished, Collection<Future<Boolean>> pending)
+            throws InterruptedException {
+        Future<Boolean> future = finished.take();
+        pending.remove(future);
+
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return false;
+        } catch (InterruptedException | ExecutionException e) {
+            logger.warn(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Releases dependent steps right away and cancels all callables of this step that have not finished yet.
+     * Running callables are interrupted, which destroys the processes they are waiting for.
+     */
+    private void cancelRemaining(Collection<Future<Boolean>> pending) {
+        logger.warn("A callable failed. Cancelling " + pending.size() + " remaining callable(s).");
+        markOutputsAs(OutputFile.states.ErrorDuringCreation);
+        pending.forEach(future -> future.cancel(true));
+    }
+
+    /**
+     * Override this method to change how many callables of this executableStep may be submitted to the performance
+     * pool at the same time. Defaults to twice the thread number.
+     *
+     * @return the maximum number of submitted but unfinished callables
+     */
+    protected int getMaxCallablesInFlight() {
+        return 2 * ExecutionManager.getThreadNumber();
+    }
+
+    /**
+     * Override this method to declare how long this executableStep is expected to take.
+     * <p>
+     * Used for prioritizing callables on the critical path. If no duration is declared, the duration of the last
+     * successful execution is used.
+     *
+     * @return the expected duration in milliseconds or null if unknown
+     */
+    protected Long getDeclaredDuration() {
+        return null;
+    }
+
+    /**
+     * Get the declared or recorded duration of this executableStep.
+     *
+     * @return the expected duration in milliseconds or -1 if unknown
+     */
+    long getExpectedDuration() {
+        Long declared = getDeclaredDuration();
+        if (declared != null) {
+            return declared;
+        }
+
+        if (durationFile.exists()) {
+            try {
+                return Long.parseLong(FileManagement.readFile(durationFile).trim());
+            } catch (IOException | NumberFormatException e) {
+                logger.warn("Could not read recorded duration: " + e.getMessage());
+            }
+        }
+        return -1;
+    }
+
+    private void recordDuration(long millis) {
+        try {
+            FileManagement.writeFile(durationFile, String.valueOf(millis));
+        } catch (IOException e) {
+            logger.warn("Could not record duration: " + e.getMessage());
+        }
+    }
+
+    void setPriority(long priority) {
+        this.priority = priority;
     }
 
     /**
      * Get the configs that are not mandatory for execution of this executableStep but influence the outcome.
      * Generally if a Config.isSet() check takes place before config value usage, it is an optional config.
      *
+     * <p>
+     * The config fields are private and final, so they are collected only once per executableStep.
+     *
      * @return a set of the optional configs, must not be null.
      */
     private Collection<UsageConfig<?>> getConfigs() {
-        Collection<UsageConfig<?>> configs = new HashSet<>();
-        for (Field field : this.getClass().getDeclaredFields()) {
-
-            if (field.getType().getSuperclass() != null && field.getType().getSuperclass().equals(UsageConfig.class)) {
+        Collection<UsageConfig<?>> configs = usageConfigs;
+        if (configs == null) {
+            configs = new HashSet<>();
+            for (Field field : configFields.get(this.getClass())) {
                 try {
-                    field.setAccessible(true);
                     configs.add((UsageConfig<?>) field.get(this));
                 } catch (IllegalAccessException e) {
                     logger.error(e.getMessage());
                 }
             }
+            configs = Collections.unmodifiableCollection(configs);
+            usageConfigs = configs;
         }
         return configs;
     }
@@ -274,7 +656,7 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
      *
      * @return true if all the requirements are met, otherwise false
      */
-    private boolean checkRequirements() {
+    boolean checkRequirements() {
         return getConfigs().stream().allMatch(config -> {
 
             logger.trace("Checking config: " + config.getName());
@@ -292,8 +674,24 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
      * If the main job consists of multiple sub jobs that require the previous sub job to be finished, splitting the
      * process into multiple executableSteps should be considered. If this is not an option, the
      * finishAllQueuedThreads() method should be used in order to make sure that the previous sub job is finished.
+     * <p>
+     * Steps with a very large number of callables should override {@link #streamCallables()} instead.
      */
-    protected abstract Collection<Callable<Boolean>> getCallables();
+    protected Collection<Callable<Boolean>> getCallables() {
+        return null;
+    }
+
+    /**
+     * The job performed by this executableStep as a lazily evaluated stream.
+     * <p>
+     * Callables are only created when they are about to be submitted, so memory usage does not depend on the number
+     * of callables. The stream is closed after execution. Defaults to the callables returned by
+     * {@link #getCallables()}.
+     */
+    protected Stream<Callable<Boolean>> streamCallables() {
+        Collection<Callable<Boolean>> callables = getCallables();
+        return callables == null ? null : callables.stream();
+    }
 
     protected InputFile addInput(UsageConfig<File> file) {
         if (!file.isSet()) {
@@ -309,11 +707,7 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
 
     protected InputFile addInput(OutputFile parent, OutputFile outputFile) {
         InputFile inputFile = new InputFile(parent, outputFile);
-        try {
-            FileManagement.softLink(inputFile, outputFile);
-        } catch (IOException e) {
-            logger.warn("Could not creat soft link: " + e.getMessage());
-        }
+        addPendingInput(new PendingInput(inputFile, outputFile, null));
 
         inputs.add(inputFile);
         outputFile.addListener(this.dependencyManager);
@@ -323,18 +717,117 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
 
     protected InputFile addInput(InputStream stream, String name) {
         InputFile target = new InputFile(inputDirectory, name);
-        try (FileOutputStream fos = new FileOutputStream(target)) {
-            fos.write(stream.readAllBytes());
+        try {
+            addPendingInput(new PendingInput(target, null, stream.readAllBytes()));
         } catch (IOException e) {
             logger.warn("Could not copy stream to file: " + e.getMessage());
         }
         return target;
     }
 
+    private void addPendingInput(PendingInput input) {
+        synchronized (pendingInputs) {
+            pendingInputs.add(input);
+            if (inputsCreated) {
+                createInput(input.file(), input);
+            }
+        }
+    }
+
     protected boolean mayBeSkipped() {
         return true;
     }
 
+    /**
+     * Override this method, if a partially or completely finished execution of this executableStep may be resumed.
+     * <p>
+     * If the hashes of a resumable executableStep do not match, its output directory is not cleared. Instead, every
+     * {@link KeyedCallable} whose key, inputs and outputs are unchanged since its last successful run with the same
+     * configs is skipped. Outputs of callables that no longer exist are not removed.
+     *
+     * @return true if finished keyed callables may be reused, false otherwise
+     */
+    protected boolean isResumable() {
+        return false;
+    }
+
+    /**
+     * Finished keyed callables of resumable executableSteps are recorded in every execution, so that the next one can
+     * resume. Previous records are only reused if the outputs have been kept.
+     */
+    private boolean isJournaled() {
+        return !underDevelopment && isResumable() && ExecutionManager.isHashingEnabled();
+    }
+
+    /**
+     * Opens a file for writing, replacing its content. The digest of the written content is calculated on the fly, so
+     * the file does not have to be read again when the hashes are written after the execution.
+     *
+     * @param file a file created by this executableStep, usually one of its outputs
+     */
+    protected OutputStream newOutputStream(File file) throws IOException {
+        HashAlgorithm algorithm = Hashing.getAlgorithm();
+        return Compression.declaredFor(file).newOutputStream(
+                new DigestingOutputStream(Files.newOutputStream(file.toPath()), algorithm,
+                        digest -> ExecutionManager.recordDigest(file, algorithm, digest)));
+    }
+
+    /**
+     * Like {@link #newOutputStream(File)}, but returns a channel.
+     */
+    protected WritableByteChannel newOutputChannel(File file) throws IOException {
+        if (Compression.declaredFor(file) != Compression.NONE) {
+            return Channels.newChannel(newOutputStream(file));
+        }
+        HashAlgorithm algorithm = Hashing.getAlgorithm();
+        return new DigestingChannel(Files.newByteChannel(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), algorithm,
+                digest -> ExecutionManager.recordDigest(file, algorithm, digest));
+    }
+
+    /**
+     * Returns a sink appending to the given file, shared by all callables of this executableStep. Preferable to
+     * {@link FileManagement#appendToFile(File, String)} if many callables append to the same file.
+     * <p>
+     * The sink is closed once all callables have finished. The execution fails if any of the appended records could
+     * not be written.
+     *
+     * @param file a file created by this executableStep, usually one of its outputs
+     */
+    protected AppendSink getAppendSink(File file) throws IOException {
+        try {
+            return appendSinks.computeIfAbsent(file.getAbsoluteFile(), key -> {
+                try {
+                    // The original file may declare a compression
+                    return new AppendSink(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean closeAppendSinks() {
+        boolean allClosed = true;
+        try {
+            hashManager.getCallableJournal().close();
+        } catch (IOException e) {
+            logger.warn("Could not write callable journal: " + e.getMessage());
+        }
+        for (AppendSink sink : appendSinks.values()) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                logger.error(e.getMessage());
+                allClosed = false;
+            }
+        }
+        appendSinks.clear();
+        return allClosed;
+    }
+
     protected OutputFile addOutput(String name) {
         return addOutput(this.outputDirectory, name);
     }
@@ -346,6 +839,16 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
         return output;
     }
 
+    /**
+     * Adds an output that is compressed with the given codec when written through {@link #newOutputStream(File)},
+     * {@link #getAppendSink(File)} or {@link FileManagement#appendToFile(File, String)}.
+     */
+    protected OutputFile addOutput(String name, Compression compression) {
+        OutputFile output = addOutput(name);
+        output.setCompression(compression);
+        return output;
+    }
+
     public void setUnderDevelopment() {
         this.underDevelopment = true;
     }
@@ -381,4 +884,10 @@ public abstract class ExecutableStep<C extends ConfigModuleCollection> implement
             });
         }
     }
+
+    /**
+     * An input that is either a link to the target or a file with the given content.
+     */
+    private record PendingInput(File file, OutputFile linkTarget, byte[] content) {
+    }
 }
@@ -2,20 +2,47 @@ package org.exbio.pipejar.pipeline;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exbio.pipejar.cache.OutputCache;
+import org.exbio.pipejar.cache.RemoteCache;
+import org.exbio.pipejar.cache.StepCache;
 import org.exbio.pipejar.configs.ConfigTypes.FileTypes.OutputFile;
+import org.exbio.pipejar.util.FileDigester;
+import org.exbio.pipejar.util.FileManagement;
+import org.exbio.pipejar.util.FingerprintCache;
+import org.exbio.pipejar.util.HashAlgorithm;
+import org.exbio.pipejar.util.Hashing;
+import org.exbio.pipejar.util.ScriptExecution;
+import org.exbio.pipejar.util.VirtualThreads;
+import org.exbio.pipejar.util.WrittenDigests;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.function.Function;
 
 public class ExecutionManager {
-    private static final ExecutorService chillPool = Executors.newCachedThreadPool();
+    private static volatile ExecutorService chillPool = Executors.newCachedThreadPool();
     public static OutputFile workingDirectory;
     private static Integer threadNumber;
-    private static ExecutorService performancePool;
+    private static PriorityExecutor performancePool;
     private static boolean hashingEnabled = true;
+    private static boolean virtualThreadsEnabled = false;
+    private static boolean failFastEnabled = false;
+    private static boolean singlePassEnabled = false;
+    private static boolean asyncDeletionEnabled = false;
+    private static FingerprintCache fingerprintCache = null;
+    private static WrittenDigests writtenDigests = createWrittenDigests();
+    /**
+     * Local caches come first, since they are cheaper to query.
+     */
+    private static final List<StepCache> stepCaches = new ArrayList<>();
     private final Logger logger = LogManager.getLogger(ExecutionManager.class);
     private final Collection<ExecutableStep<?>> steps;
 
@@ -32,6 +59,7 @@ public class ExecutionManager {
             System.exit(0);
         }
         this.steps.forEach(step -> step.getOutputs().forEach(OutputFile::register));
+        new CriticalPath(steps).getChainLengths().forEach(ExecutableStep::setPriority);
     }
 
     public static Integer getThreadNumber() {
@@ -48,17 +76,98 @@ public class ExecutionManager {
             System.exit(1);
         }
         threadNumber = nThreads;
-        performancePool = Executors.newFixedThreadPool(nThreads);
+        performancePool = new PriorityExecutor(nThreads);
     }
 
-    static Future<Boolean> submitPerformanceTask(Callable<Boolean> callable) {
-        return performancePool.submit(callable);
+    /**
+     * Submits a callable to the performance pool.
+     * <p>
+     * Pending callables are started by descending priority, so that steps on the critical path of the workflow are
+     * not queued behind callables of short side branches. The future is added to the completion queue once it is
+     * done.
+     */
+    static Future<Boolean> submitPerformanceTask(Callable<Boolean> callable, long priority,
+                                                 BlockingQueue<Future<Boolean>> completionQueue) {
+        return performancePool.submit(callable, priority, completionQueue);
+    }
+
+    /**
+     * Runs step coordination, {@link WaitingCallable}s and the waiting of
+     * {@link ScriptExecution#executeAsync(List, boolean)} on virtual threads.
+     * <p>
+     * All other callables of the steps keep running on the fixed size performance pool. Requires Java 21 or newer,
+     * otherwise platform threads are kept.
+     */
+    public static void enableVirtualThreads() {
+        if (virtualThreadsEnabled) {
+            return;
+        }
+        if (!VirtualThreads.isSupported()) {
+            System.out.println("Virtual threads require Java 21 or newer. Keeping platform threads.");
+            return;
+        }
+        virtualThreadsEnabled = true;
+
+        ExecutorService previousPool = chillPool;
+        chillPool = VirtualThreads.newExecutor();
+        previousPool.shutdown();
+
+        ScriptExecution.setWaitingPool(VirtualThreads.newExecutor());
+    }
+
+    /**
+     * Submits a {@link WaitingCallable}. With virtual threads, it runs on the easy pool instead of the performance
+     * pool. The future is added to the completion queue once it is done.
+     */
+    static Future<Boolean> submitWaitingTask(Callable<Boolean> callable, long priority,
+                                             BlockingQueue<Future<Boolean>> completionQueue) {
+        if (!virtualThreadsEnabled) {
+            return submitPerformanceTask(callable, priority, completionQueue);
+        }
+        FutureTask<Boolean> task = new FutureTask<>(callable) {
+            @Override
+            protected void done() {
+                completionQueue.add(this);
+            }
+        };
+        chillPool.execute(task);
+        return task;
     }
 
     static Future<Boolean> submitEasyTask(Callable<Boolean> callable) {
         return chillPool.submit(callable);
     }
 
+    /**
+     * Dispatches the callable to the easy pool once the readiness future completes.
+     * <p>
+     * No thread is occupied while the readiness is pending. If the readiness completes with false, only the
+     * notReady hook is run and the returned future completes with false. Both paths are run inside the pool, so that
+     * failures cascading through long chains of steps do not grow the stack of the notifying thread.
+     */
+    static CompletableFuture<Boolean> submitEasyTaskWhenReady(CompletableFuture<Boolean> readiness,
+                                                              Callable<Boolean> callable, Runnable notReady) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        readiness.whenComplete((ready, throwable) -> chillPool.execute(() -> {
+            try {
+                if (throwable != null) {
+                    throw throwable;
+                }
+                if (ready) {
+                    result.complete(callable.call());
+                } else {
+                    notReady.run();
+                    result.complete(false);
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }));
+
+        return result;
+    }
+
     public static void disableHashing() {
         hashingEnabled = false;
     }
@@ -67,13 +176,195 @@ public class ExecutionManager {
         return hashingEnabled;
     }
 
+    /**
+     * Reuses the digests of files whose status (device, inode, size, modification and change time) did not change
+     * since they have been hashed, instead of reading them again. The cache is stored inside the working directory.
+     * <p>
+     * Requires the working directory to be set.
+     *
+     * @param paranoid if true, all files are hashed again, but the cache is still updated for later runs
+     */
+    public static void enableFingerprintCache(boolean paranoid) {
+        HashAlgorithm algorithm = Hashing.getAlgorithm();
+        fingerprintCache = new FingerprintCache(file -> Hashing.hashFile(file, algorithm), paranoid);
+        try {
+            fingerprintCache.load(getFingerprintCacheFile());
+        } catch (IOException e) {
+            System.out.println("Could not load fingerprint cache: " + e.getMessage());
+        }
+        writtenDigests = createWrittenDigests();
+    }
+
+    static FileDigester getFileDigester() {
+        return writtenDigests;
+    }
+
+    private static WrittenDigests createWrittenDigests() {
+        HashAlgorithm algorithm = Hashing.getAlgorithm();
+        return new WrittenDigests(
+                fingerprintCache != null ? fingerprintCache : file -> Hashing.hashFile(file, algorithm), algorithm);
+    }
+
+    /**
+     * Records the digest of a file calculated while writing it, so that the file is not read again for hashing.
+     */
+    static void recordDigest(File file, HashAlgorithm algorithm, String digest) {
+        try {
+            writtenDigests.record(file, algorithm, digest);
+        } catch (IOException ignore) {
+            // The file is read again for hashing
+        }
+    }
+
+    private static File getFingerprintCacheFile() {
+        return new File(workingDirectory, ".fingerprints-" + Hashing.getAlgorithm().name() + ".tsv");
+    }
+
+    /**
+     * Shares the outputs of skippable steps between working directories. Before a step executes its callables, it
+     * looks up its class, configs and inputs in the given store and restores the stored outputs if present. Outputs
+     * of executed steps are added to the store.
+     *
+     * @param directory the directory of the store, may be shared by multiple workflows
+     * @param maxBytes  the size limit of the store, the least recently used outputs are evicted first
+     */
+    public static void setOutputCache(File directory, long maxBytes) {
+        try {
+            stepCaches.add(0, new OutputCache(directory, maxBytes));
+        } catch (IOException e) {
+            System.out.println("Could not create output cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shares the outputs of skippable steps with other machines through a remote cache. Used like the local output
+     * cache, but queried after it. Outputs restored from the remote cache are added to the local one.
+     *
+     * @param endpoint the base address of the remote cache
+     */
+    public static void setRemoteCache(URI endpoint) {
+        stepCaches.add(new RemoteCache(endpoint));
+    }
+
+    static List<StepCache> getStepCaches() {
+        return stepCaches;
+    }
+
+    /**
+     * Sets the algorithm used for hashing inputs and outputs. Existing hashes of another algorithm are treated as
+     * missing, so all steps are executed once again.
+     * <p>
+     * Has to be called before enabling the fingerprint cache.
+     */
+    public static void setHashAlgorithm(HashAlgorithm algorithm) {
+        Hashing.setAlgorithm(algorithm);
+        writtenDigests = createWrittenDigests();
+    }
+
+    /**
+     * Stops a step as soon as one of its callables fails.
+     * <p>
+     * The remaining callables of the step are cancelled, running ones are interrupted and the external processes they
+     * wait for are destroyed. All steps depending on the failed step are marked as failed immediately.
+     */
+    public static void enableFailFast() {
+        failFastEnabled = true;
+    }
+
+    static boolean isFailFastEnabled() {
+        return failFastEnabled;
+    }
+
+    /**
+     * Moves every step from simulation straight into execution as soon as its dependencies have been created,
+     * instead of simulating the whole workflow before the first execution starts.
+     * <p>
+     * Required configs and the registration of all dependencies are still checked for every step before anything
+     * is executed.
+     */
+    public static void enableSinglePass() {
+        singlePassEnabled = true;
+    }
+
+    /**
+     * Moves outdated outputs aside and deletes them in the background, so that steps do not wait for large output
+     * directories to be deleted. Pending deletions are awaited on shutdown.
+     */
+    public static void enableAsyncDeletion() {
+        asyncDeletionEnabled = true;
+    }
+
+    /**
+     * Deletes the given output directory, in the background if enabled.
+     */
+    static void deleteOutputs(File directory) throws IOException {
+        if (asyncDeletionEnabled) {
+            FileManagement.moveToTrash(directory);
+        } else {
+            FileManagement.deleteFileStructure(directory);
+        }
+    }
+
     public void run() {
-        if (simulate()) {
+        if (singlePassEnabled) {
+            if (checkRequirements()) {
+                waitForAll(ExecutableStep::simulateAndExecute, "Simulation and execution");
+            }
+        } else if (simulate()) {
             execute();
         }
         shutdown();
     }
 
+    /**
+     * Determines which steps would be executed by {@link #run()} and why, without modifying the working directory.
+     * <p>
+     * A step is executed if it cannot be skipped, if its configs, inputs or outputs changed since its hashes have been
+     * written, or if any step it depends on is executed.
+     *
+     * @return the plan of all steps in topological order, steps on dependency cycles are not included
+     */
+    public RerunPlan plan() {
+        logger.info("Planning execution...");
+        CriticalPath graph = new CriticalPath(steps);
+        Map<ExecutableStep<?>, String> reasons = new HashMap<>();
+        List<RerunPlan.Entry> entries = new ArrayList<>();
+
+        for (ExecutableStep<?> step : graph.getTopologicalOrder()) {
+            String upstreamRerun = graph.getPredecessors(step).stream().filter(
+                    predecessor -> reasons.get(predecessor) != null).map(
+                    predecessor -> predecessor.getClass().getName()).sorted().findFirst().orElse(null);
+            String reason = step.findRerunReason(upstreamRerun);
+            reasons.put(step, reason);
+            entries.add(new RerunPlan.Entry(step.getClass().getName(), reason,
+                    reason == null ? -1 : step.getExpectedDuration()));
+        }
+        return new RerunPlan(entries);
+    }
+
+    /**
+     * Performs the checks of the simulation that do not depend on other steps for all steps at once.
+     *
+     * @return true if the configs of all steps are set and all dependencies are created by a step
+     */
+    private boolean checkRequirements() {
+        logger.info("Checking requirements...");
+
+        boolean allGood = steps.stream().map(step -> {
+            boolean requirementsMet = step.checkRequirements();
+            if (step.getDependencies().stream().anyMatch(OutputFile::isNotRegistered)) {
+                step.logger.warn("Some dependencies will not be generated since their steps will not be executed.");
+                requirementsMet = false;
+            }
+            return requirementsMet;
+        }).reduce(true, Boolean::logicalAnd);
+
+        if (!allGood) {
+            logger.error("Checking requirements failed.");
+        }
+        return allGood;
+    }
+
     public void execute() {
         waitForAll(ExecutableStep::execute, "Execution");
     }
@@ -85,9 +376,23 @@ public class ExecutionManager {
     public void shutdown() {
         performancePool.shutdown();
         chillPool.shutdown();
+
+        try {
+            FileManagement.awaitPendingDeletions();
+        } catch (IOException e) {
+            logger.warn(e.getMessage());
+        }
+
+        if (fingerprintCache != null) {
+            try {
+                fingerprintCache.save(getFingerprintCacheFile());
+            } catch (IOException e) {
+                logger.warn("Could not save fingerprint cache: " + e.getMessage());
+            }
+        }
     }
 
-    private boolean waitForAll(Function<ExecutableStep, Future<Boolean>> function, String name) {
+    private boolean waitForAll(Function<ExecutableStep<?>, Future<Boolean>> function, String name) {
         logger.info("Waiting for " + name + " results...");
 
         Collection<Future<Boolean>> futures = new HashSet<>();
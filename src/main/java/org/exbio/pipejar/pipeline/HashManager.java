@@ -5,19 +5,26 @@ import org.exbio.pipejar.configs.ConfigTypes.FileTypes.OutputFile;
 import org.exbio.pipejar.configs.ConfigTypes.UsageTypes.UsageConfig;
 import org.exbio.pipejar.util.FileManagement;
 import org.exbio.pipejar.util.Hashing;
+import org.exbio.pipejar.util.MerkleTree;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class HashManager {
+    private static final String noHashes = "No hashes found";
     private final Logger logger;
 
-    private final File configHashFile, inputHashFile, outputHashFile;
+    private final File configHashFile, inputManifestFile, outputManifestFile;
 
-    private final String oldConfigHash, oldInputHash, oldOutputHash;
+    private final String oldConfigHash;
+    private final MerkleTree oldInputTree, oldOutputTree;
     private final File inputDirectory, outputDirectory;
+    private final CallableJournal callableJournal;
 
     public HashManager(File superDirectory, Logger logger, File inputDirectory, File outputDirectory) {
         this.logger = logger;
@@ -26,12 +33,13 @@ public class HashManager {
         this.outputDirectory = outputDirectory;
 
         configHashFile = new File(workingDirectory, "configs.md5");
-        inputHashFile = new File(workingDirectory, "inputs.md5");
-        outputHashFile = new File(workingDirectory, "outputs.md5");
+        inputManifestFile = new File(workingDirectory, "inputs.json");
+        outputManifestFile = new File(workingDirectory, "outputs.json");
+        callableJournal = new CallableJournal(new File(workingDirectory, "callables.tsv"), logger);
 
         oldConfigHash = readHash(configHashFile);
-        oldInputHash = readHash(inputHashFile);
-        oldOutputHash = readHash(outputHashFile);
+        oldInputTree = readManifest(inputManifestFile);
+        oldOutputTree = readManifest(outputManifestFile);
     }
 
 
@@ -47,46 +55,124 @@ public class HashManager {
         return "";
     }
 
+    private MerkleTree readManifest(File manifestFile) {
+        String content = readHash(manifestFile);
+        if (content.isBlank()) {
+            return null;
+        }
+
+        try {
+            return MerkleTree.fromJSONObject(new JSONObject(content));
+        } catch (JSONException | IllegalArgumentException e) {
+            logger.warn("Could not parse hash manifest: " + manifestFile.getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * Checks if configs, inputs and outputs are unchanged since the hashes have been written.
+     * <p>
+     * Stops at the first difference and logs the file causing it.
+     */
     boolean validateHashes(Collection<UsageConfig<?>> configs, boolean acceptAll) {
         logger.debug("Validating hash...");
 
-        if (oldConfigHash.isEmpty() || oldInputHash.isEmpty() || oldOutputHash.isEmpty()) {
-            logger.debug("No hashes found, skipping validation");
-            return false;
+        String change = findChange(configs, acceptAll);
+        if (change == null) {
+            return true;
+        }
+        if (change.equals(noHashes)) {
+            logger.debug(noHashes + ", skipping validation");
+        } else {
+            logger.info(change);
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #validateHashes(Collection, boolean)}, but returns the first difference instead of logging it.
+     * Does not modify any file.
+     *
+     * @return a description of the first difference or null if configs, inputs and outputs are unchanged
+     */
+    String findChange(Collection<UsageConfig<?>> configs, boolean acceptAll) {
+        return findChange(configs, acceptAll, inputDirectory);
+    }
+
+    /**
+     * Like {@link #findChange(Collection, boolean)}, but compares the recorded inputs to another directory, e.g. one
+     * containing the inputs the step would be executed with.
+     */
+    String findChange(Collection<UsageConfig<?>> configs, boolean acceptAll, File inputDirectory) {
+        if (oldConfigHash.isEmpty() || oldInputTree == null || oldOutputTree == null) {
+            return noHashes;
         }
 
         if (acceptAll) {
             logger.debug("Accepting all hashes, skipping validation");
-            return true;
+            OutputTrees.register(outputDirectory, oldOutputTree);
+            return null;
+        }
+
+        if (oldInputTree.getAlgorithm() != Hashing.getAlgorithm() ||
+                oldOutputTree.getAlgorithm() != Hashing.getAlgorithm()) {
+            return "Hash algorithm changed to " + Hashing.getAlgorithm();
         }
 
         String configHash = hashConfigs(configs);
-        boolean configMatches = oldConfigHash.equals(configHash);
-        if (!configMatches) {
-            logger.debug("Configs changed. Newly calculated hash: " + configHash);
+        if (!oldConfigHash.equals(configHash)) {
+            return "Configs changed. Newly calculated hash: " + configHash;
         }
 
-        String inputHash = hashDirectory(inputDirectory);
-        boolean inputMatches = oldInputHash.equals(inputHash);
-        if (!inputMatches) {
-            logger.debug("Input changed. Newly calculated hash: " + inputHash);
+        String inputDifference = findDifference(oldInputTree, inputDirectory, OutputTrees::lookup);
+        if (inputDifference != null) {
+            return "Input changed: " + inputDifference;
         }
 
-        String outputHash = hashDirectory(outputDirectory);
-        boolean outputMatches = oldOutputHash.equals(outputHash);
-        if (!outputMatches) {
-            logger.debug("Output changed. Newly calculated hash: " + outputHash);
+        String outputDifference = findDifference(oldOutputTree, outputDirectory, file -> null);
+        if (outputDifference != null) {
+            return "Output changed: " + outputDifference;
         }
 
-        return configMatches && inputMatches && outputMatches;
+        OutputTrees.register(outputDirectory, oldOutputTree);
+        return null;
     }
 
     void writeHashes(Collection<UsageConfig<?>> configs) throws IOException {
         logger.debug("Writing hashes.");
 
         FileManagement.writeFile(configHashFile, hashConfigs(configs));
-        FileManagement.writeFile(inputHashFile, hashDirectory(inputDirectory));
-        FileManagement.writeFile(outputHashFile, hashDirectory(outputDirectory));
+        writeManifest(inputManifestFile, inputDirectory, OutputTrees::lookup);
+        MerkleTree outputTree = writeManifest(outputManifestFile, outputDirectory, file -> null);
+        if (outputTree != null) {
+            OutputTrees.register(outputDirectory, outputTree);
+        }
+    }
+
+    /**
+     * Removes the outputs from the registry of hashed outputs, since they are about to change.
+     */
+    void unregisterOutputs() {
+        OutputTrees.unregister(outputDirectory);
+    }
+
+    /**
+     * Identifies the outputs of a step by its class, its configs and the content of its inputs, independent of the
+     * working directory. Only valid once all inputs have been created.
+     */
+    String getCacheKey(Class<?> stepClass, Collection<UsageConfig<?>> configs) throws IOException {
+        MerkleTree inputTree = MerkleTree.build(inputDirectory, MerkleTree.defaultFilter,
+                ExecutionManager.getFileDigester(), Hashing.getAlgorithm(), OutputTrees::lookup);
+        return Hashing.hash(String.join("\n", stepClass.getName(), hashConfigs(configs),
+                inputTree == null ? "" : inputTree.getDigest(), Hashing.getAlgorithm().name()));
+    }
+
+    CallableJournal getCallableJournal() {
+        return callableJournal;
+    }
+
+    void loadCallableJournal(Collection<UsageConfig<?>> configs) {
+        callableJournal.load(hashConfigs(configs));
     }
 
     private String hashConfigs(Collection<UsageConfig<?>> configs) {
@@ -94,11 +180,20 @@ public class HashManager {
                 configs.stream().map(UsageConfig::toString).map(Hashing::hash).sorted().collect(Collectors.joining()));
     }
 
-    private String hashDirectory(File file) {
+    private MerkleTree writeManifest(File manifestFile, File directory, Function<File, MerkleTree> known)
+            throws IOException {
+        MerkleTree tree = MerkleTree.build(directory, MerkleTree.defaultFilter, ExecutionManager.getFileDigester(),
+                Hashing.getAlgorithm(), known);
+        FileManagement.writeFile(manifestFile, tree == null ? "" : tree.toJSONObject().toString());
+        return tree;
+    }
+
+    private String findDifference(MerkleTree tree, File directory, Function<File, MerkleTree> known) {
         try {
-            return file.exists() ? Hashing.hashFile(file) : "";
+            return tree.findFirstDifference(directory, MerkleTree.defaultFilter, ExecutionManager.getFileDigester(),
+                    known);
         } catch (IOException e) {
-            logger.warn("Could not calculate input hash");
+            logger.warn("Could not calculate hash of " + directory.getAbsolutePath());
             throw new RuntimeException(e);
         }
     }
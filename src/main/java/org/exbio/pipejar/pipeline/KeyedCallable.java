@@ -0,0 +1,64 @@
+package org.exbio.pipejar.pipeline;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A callable with a stable key, the files it reads and the files it creates.
+ * <p>
+ * If the executableStep is resumable, the framework records every successfully finished keyed callable. On the next
+ * execution of the step, callables are skipped if their key is unchanged, the configs of the step are unchanged and
+ * their inputs and outputs still match the recorded fingerprint. The key has to contain everything else the result
+ * depends on, e.g. files that are read but not declared as inputs.
+ */
+public class KeyedCallable implements Callable<Boolean> {
+    private final String key;
+    private final Collection<File> inputs;
+    private final Collection<File> outputs;
+    private final Callable<Boolean> callable;
+
+    public KeyedCallable(String key, Collection<File> inputs, Collection<File> outputs, Callable<Boolean> callable) {
+        this.key = key;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.callable = callable;
+    }
+
+    public KeyedCallable(String key, Collection<File> outputs, Callable<Boolean> callable) {
+        this(key, List.of(), outputs, callable);
+    }
+
+    public KeyedCallable(String key, File input, File output, Callable<Boolean> callable) {
+        this(key, List.of(input), List.of(output), callable);
+    }
+
+    public KeyedCallable(String key, File output, Callable<Boolean> callable) {
+        this(key, List.of(output), callable);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Collection<File> getInputs() {
+        return inputs;
+    }
+
+    public Collection<File> getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * @return true if the wrapped callable is a {@link WaitingCallable}
+     */
+    boolean isWaiting() {
+        return callable instanceof WaitingCallable;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+        return callable.call();
+    }
+}
@@ -0,0 +1,70 @@
+package org.exbio.pipejar.pipeline;
+
+import org.exbio.pipejar.util.MerkleTree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the hash manifests of all output directories that have been hashed or validated during the current run.
+ * <p>
+ * Inputs are links to the outputs of other steps. Instead of hashing the linked content again, the manifest of an
+ * input is taken from the manifest of the linked output.
+ */
+class OutputTrees {
+    private static final Map<Path, MerkleTree> trees = new ConcurrentHashMap<>();
+
+    private OutputTrees() {
+    }
+
+    static void register(File outputDirectory, MerkleTree tree) {
+        try {
+            trees.put(outputDirectory.toPath().toRealPath(), tree);
+        } catch (IOException ignore) {
+            // The directory does not exist, so there is nothing to link to
+        }
+    }
+
+    static void unregister(File outputDirectory) {
+        trees.remove(outputDirectory.toPath().toAbsolutePath().normalize());
+        try {
+            trees.remove(outputDirectory.toPath().toRealPath());
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * @return the registered manifest of the file the given link points to, or null if the link does not point into
+     * a registered output directory
+     */
+    static MerkleTree lookup(File file) {
+        if (trees.isEmpty() || !Files.isSymbolicLink(file.toPath())) {
+            return null;
+        }
+
+        Path target;
+        try {
+            target = file.toPath().toRealPath();
+        } catch (IOException e) {
+            return null;
+        }
+
+        for (Path root = target; root != null; root = root.getParent()) {
+            MerkleTree tree = trees.get(root);
+            if (tree != null) {
+                for (Path name : root.relativize(target)) {
+                    if (tree == null || name.toString().isEmpty()) {
+                        break;
+                    }
+                    tree = tree.getChild(name.toString());
+                }
+                return tree;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+package org.exbio.pipejar.pipeline;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size thread pool that runs queued tasks ordered by descending priority.
+ * <p>
+ * Tasks with the same priority are run in submission order.
+ */
+class PriorityExecutor extends ThreadPoolExecutor {
+    private final AtomicLong sequence = new AtomicLong();
+
+    PriorityExecutor(int nThreads) {
+        super(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+    }
+
+    <T> Future<T> submit(Callable<T> callable, long priority) {
+        return submit(callable, priority, null);
+    }
+
+    /**
+     * Submits a callable and adds its future to the given queue as soon as it is done.
+     */
+    <T> Future<T> submit(Callable<T> callable, long priority, BlockingQueue<Future<T>> completionQueue) {
+        PriorityTask<T> task = new PriorityTask<>(callable, priority, sequence.getAndIncrement(), completionQueue);
+        execute(task);
+        return task;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command instanceof PriorityTask) {
+            super.execute(command);
+        } else {
+            super.execute(new PriorityTask<>(Executors.callable(command), 0, sequence.getAndIncrement(), null));
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PriorityTask<>(callable, 0, sequence.getAndIncrement(), null);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PriorityTask<>(Executors.callable(runnable, value), 0, sequence.getAndIncrement(), null);
+    }
+
+    private static class PriorityTask<T> extends FutureTask<T> implements Comparable<PriorityTask<?>> {
+        private final long priority, sequence;
+        private final BlockingQueue<Future<T>> completionQueue;
+
+        private PriorityTask(Callable<T> callable, long priority, long sequence,
+                             BlockingQueue<Future<T>> completionQueue) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = sequence;
+            this.completionQueue = completionQueue;
+        }
+
+        @Override
+        protected void done() {
+            if (completionQueue != null) {
+                completionQueue.add(this);
+            }
+        }
+
+        @Override
+        public int compareTo(PriorityTask<?> other) {
+            int byPriority = Long.compare(other.priority, priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.exbio.pipejar.pipeline;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists which steps of a workflow will be executed and which will be skipped, in topological order.
+ *
+ * @see ExecutionManager#plan()
+ */
+public class RerunPlan {
+    private final List<Entry> entries;
+
+    RerunPlan(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public List<Entry> getReruns() {
+        return entries.stream().filter(Entry::isRerun).toList();
+    }
+
+    /**
+     * @return the sum of the expected durations of all rerunning steps with a known duration in milliseconds
+     */
+    public long getEstimatedDuration() {
+        return getReruns().stream().mapToLong(Entry::expectedDuration).filter(duration -> duration >= 0).sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        List<Entry> reruns = getReruns();
+        builder.append(reruns.size()).append(" of ").append(entries.size()).append(" steps will be executed.\n");
+
+        for (Entry entry : entries) {
+            builder.append(entry.isRerun() ? "RUN  " : "SKIP ").append(entry.step());
+            if (entry.isRerun()) {
+                builder.append(" [").append(entry.expectedDuration() >= 0 ? format(entry.expectedDuration()) :
+                        "unknown duration").append("]: ").append(entry.reason());
+            }
+            builder.append('\n');
+        }
+
+        long unknown = reruns.stream().filter(entry -> entry.expectedDuration() < 0).count();
+        builder.append("Estimated total duration: ").append(format(getEstimatedDuration()));
+        if (unknown > 0) {
+            builder.append(" plus ").append(unknown).append(" step(s) without recorded duration");
+        }
+        return builder.toString();
+    }
+
+    private static String format(long millis) {
+        Duration duration = Duration.ofMillis(millis);
+        return String.format("%d:%02d:%02d", duration.toHours(), duration.toMinutesPart(),
+                duration.toSecondsPart());
+    }
+
+    /**
+     * @param step             the class name of the step
+     * @param reason           why the step will be executed, null if it will be skipped
+     * @param expectedDuration the declared or recorded duration in milliseconds, -1 if unknown
+     */
+    public record Entry(String step, String reason, long expectedDuration) {
+        public boolean isRerun() {
+            return reason != null;
+        }
+    }
+}
@@ -4,10 +4,10 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exbio.pipejar.configs.ConfigTypes.FileTypes.InputFile;
 import org.exbio.pipejar.configs.ConfigTypes.UsageTypes.UsageConfig;
+import org.exbio.pipejar.util.FieldCache;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.function.Function;
@@ -67,7 +67,7 @@ public class StyleChecker {
             // TODO: Add check for ConfigModule init calling in constructor
         }};
 
-        return Arrays.stream(step.getClass().getDeclaredFields()).allMatch(
+        return FieldCache.getDeclaredFields(step.getClass()).stream().allMatch(
                 field -> checks.stream().allMatch(fieldBooleanFunction -> fieldBooleanFunction.apply(field)));
     }
 }
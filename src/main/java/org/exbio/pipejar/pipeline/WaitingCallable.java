@@ -0,0 +1,25 @@
+package org.exbio.pipejar.pipeline;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A callable that spends most of its time waiting, e.g. for an external process started with
+ * {@link org.exbio.pipejar.util.ScriptExecution}.
+ * <p>
+ * If virtual threads are enabled, waiting callables run on a virtual thread instead of occupying a thread of the
+ * performance pool, so that the pool stays available for computations. The number of waiting callables running at
+ * the same time is still limited by {@link ExecutableStep#getMaxCallablesInFlight()}. Without virtual threads, they
+ * run on the performance pool like any other callable.
+ */
+public class WaitingCallable implements Callable<Boolean> {
+    private final Callable<Boolean> callable;
+
+    public WaitingCallable(Callable<Boolean> callable) {
+        this.callable = callable;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+        return callable.call();
+    }
+}
@@ -25,6 +25,11 @@ public abstract class Workflow<C extends ConfigModuleCollection> {
         init(argParser);
         logger.debug("Building workflow...");
         buildFlow();
+        if (argParser.isPlan()) {
+            logger.debug("Workflow built. Planning...");
+            System.out.println(new ExecutionManager(steps).plan());
+            return;
+        }
         logger.debug("Workflow built. Executing...");
         execute();
         logger.debug("Workflow executed");
@@ -35,6 +40,28 @@ public abstract class Workflow<C extends ConfigModuleCollection> {
         workingDirectory = argParser.getWorkingDirectory();
         ExecutionManager.workingDirectory = new OutputFile(extend(workingDirectory, "output").getAbsolutePath());
         ExecutionManager.setThreadNumber(argParser.getThreadNumber());
+        if (argParser.useVirtualThreads()) {
+            ExecutionManager.enableVirtualThreads();
+        }
+        if (argParser.useFailFast()) {
+            ExecutionManager.enableFailFast();
+        }
+        if (argParser.useSinglePass()) {
+            ExecutionManager.enableSinglePass();
+        }
+        if (argParser.useAsyncDeletion()) {
+            ExecutionManager.enableAsyncDeletion();
+        }
+        ExecutionManager.setHashAlgorithm(argParser.getHashAlgorithm());
+        if (argParser.useFingerprintCache()) {
+            ExecutionManager.enableFingerprintCache(argParser.isParanoid());
+        }
+        if (argParser.getOutputCacheDirectory() != null) {
+            ExecutionManager.setOutputCache(argParser.getOutputCacheDirectory(), argParser.getOutputCacheSize());
+        }
+        if (argParser.getRemoteCache() != null) {
+            ExecutionManager.setRemoteCache(argParser.getRemoteCache());
+        }
 
         configs = createConfigs();
         configs.init();
@@ -42,7 +69,9 @@ public abstract class Workflow<C extends ConfigModuleCollection> {
         if (!configs.merge(configFile) || !configs.validate()) {
             System.exit(1);
         }
-        configs.save(extend(workingDirectory, "configs.json"));
+        if (!argParser.isPlan()) {
+            configs.save(extend(workingDirectory, "configs.json"));
+        }
     }
 
     protected abstract C createConfigs();
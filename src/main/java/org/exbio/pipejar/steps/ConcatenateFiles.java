@@ -2,43 +2,52 @@ package org.exbio.pipejar.steps;
 
 import org.exbio.pipejar.configs.ConfigTypes.FileTypes.OutputFile;
 import org.exbio.pipejar.pipeline.ExecutableStepWithoutConfigs;
+import org.exbio.pipejar.util.Compression;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
-import static org.exbio.pipejar.util.FileManagement.readLines;
+import static org.exbio.pipejar.util.FileManagement.streamLines;
 
 public class ConcatenateFiles extends ExecutableStepWithoutConfigs {
     public final OutputFile outputFile;
 
     public ConcatenateFiles(Collection<OutputFile> dependencies) {
+        this(dependencies, Compression.NONE);
+    }
+
+    /**
+     * @param compression the codec of the concatenated file, inputs are decompressed automatically
+     */
+    public ConcatenateFiles(Collection<OutputFile> dependencies, Compression compression) {
         super(true, dependencies);
-        outputFile = addOutput("concatenated.txt");
+        outputFile = addOutput("concatenated.txt" + compression.getSuffix(), compression);
     }
 
     @Override
     protected Collection<Callable<Boolean>> getCallables() {
         return new HashSet<>() {{
             add(() -> {
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-                    getInputs().stream().sorted().map(inputFile -> {
-                        try {
-                            return readLines(inputFile);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }).forEachOrdered(lines -> lines.forEach(line -> {
-                        try {
-                            writer.write(line);
-                            writer.newLine();
+                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(newOutputStream(outputFile)))) {
+                    getInputs().stream().sorted().forEachOrdered(inputFile -> {
+                        try (Stream<String> lines = streamLines(inputFile)) {
+                            lines.forEachOrdered(line -> {
+                                try {
+                                    writer.write(line);
+                                    writer.newLine();
+                                } catch (IOException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            });
                         } catch (IOException e) {
                             throw new RuntimeException(e);
                         }
-                    }));
+                    });
                 }
 
                 return true;
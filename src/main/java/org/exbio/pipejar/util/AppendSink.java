@@ -0,0 +1,178 @@
+package org.exbio.pipejar.util;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appends records from many threads to one file.
+ * <p>
+ * Records are put on a lock-free queue. Whichever thread finds the file idle drains the queue and writes all pending
+ * records with a single buffered write, while the other threads continue without waiting. Records are only
+ * guaranteed to be in the file after {@link #flush()} or {@link #close()} returned. A failed write is reported by the
+ * next call of any method.
+ * <p>
+ * Writers have to wait once too many bytes are pending, so that memory usage stays bounded. If the file is compressed,
+ * the records are appended as another compressed member, which is only completed by {@link #flush()} or
+ * {@link #close()}.
+ */
+public class AppendSink implements Closeable, Flushable {
+    private static final int bufferSize = 1 << 20;
+    private static final long maxPendingBytes = 64L << 20;
+
+    private final File file;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final OutputStream out;
+    private final Compression compression;
+    /**
+     * The compressed member currently being written, only accessed while holding the write lock.
+     */
+    private OutputStream member = null;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+
+    /**
+     * Opens the file for appending, creating it if necessary.
+     */
+    public AppendSink(File file) throws IOException {
+        this.file = file;
+        FileManagement.makeSureDirectoryExists(file.getParentFile());
+        this.compression = Compression.forAppending(file);
+        this.out = new BufferedOutputStream(Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE), bufferSize);
+    }
+
+    /**
+     * Queues the record to be appended. Records of one thread are appended in the order they are queued.
+     */
+    public void append(String record) throws IOException {
+        checkUsable();
+        byte[] bytes = record.getBytes(Charset.defaultCharset());
+        pending.add(bytes);
+
+        if (pendingBytes.addAndGet(bytes.length) > maxPendingBytes) {
+            writeLock.lock();
+        } else if (!writeLock.tryLock()) {
+            // The thread holding the lock writes this record as well
+            return;
+        }
+        drainAndUnlock();
+        checkUsable();
+    }
+
+    /**
+     * Writes all records queued before this call to the file.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        writeLock.lock();
+        try {
+            writePending();
+            endMember();
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            writeLock.unlock();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Writes all queued records and closes the file. Records queued afterwards are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            try {
+                writePending();
+                endMember();
+            } finally {
+                closed = true;
+                out.close();
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        checkFailure();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the queued records while holding the lock. Since other threads may queue records after the lock is
+     * released, the queue is checked again afterwards.
+     * <p>
+     * Uncompressed records are passed on to the file right away. Compressed ones stay in the open member, since a
+     * partially written member could not be read anyway.
+     */
+    private void drainAndUnlock() {
+        do {
+            try {
+                writePending();
+                if (compression == Compression.NONE) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                writeLock.unlock();
+            }
+        } while (!pending.isEmpty() && failure == null && writeLock.tryLock());
+    }
+
+    private void writePending() throws IOException {
+        byte[] record;
+        while ((record = pending.poll()) != null) {
+            pendingBytes.addAndGet(-record.length);
+            if (failure == null && !closed) {
+                if (member == null) {
+                    member = compression.newMember(out);
+                }
+                member.write(record);
+            }
+        }
+    }
+
+    /**
+     * Completes the current compressed member, if any.
+     */
+    private void endMember() throws IOException {
+        OutputStream current = member;
+        member = null;
+        if (current != null && current != out) {
+            current.close();
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        checkFailure();
+        if (closed) {
+            throw new IOException("Append sink is closed: " + file.getAbsolutePath());
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Could not append content to file: " + file.getAbsolutePath(), failure);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.exbio.pipejar.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Calculates the digest of a byte stream incrementally, equal to {@link Hashing#hashFile(java.io.File, HashAlgorithm)}
+ * of a file with the same content.
+ */
+public class ChunkedDigest {
+    private final HashAlgorithm algorithm;
+    private final ByteArrayOutputStream chunkDigests = new ByteArrayOutputStream();
+    private Hasher chunk;
+    private long chunkBytes = 0;
+
+    public ChunkedDigest(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.chunk = algorithm.newHasher();
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int part = (int) Math.min(length, nextChunkIfFull());
+            chunk.update(bytes, offset, part);
+            chunkBytes += part;
+            offset += part;
+            length -= part;
+        }
+    }
+
+    public void update(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            int part = (int) Math.min(buffer.remaining(), nextChunkIfFull());
+            ByteBuffer slice = buffer.slice(buffer.position(), part);
+            chunk.update(slice);
+            chunkBytes += part;
+            buffer.position(buffer.position() + part);
+        }
+    }
+
+    /**
+     * @return the digest of all bytes passed so far, the digest can only be calculated once
+     */
+    public String digest() {
+        if (chunkDigests.size() == 0) {
+            return Hashing.bytesToString(chunk.digest());
+        }
+        chunkDigests.writeBytes(chunk.digest());
+
+        Hasher combined = algorithm.newHasher();
+        byte[] digests = chunkDigests.toByteArray();
+        combined.update(digests, 0, digests.length);
+        return Hashing.bytesToString(combined.digest());
+    }
+
+    /**
+     * A chunk is only finished once more data arrives, since content of exactly one chunk is hashed directly.
+     *
+     * @return the number of bytes fitting into the current chunk
+     */
+    private long nextChunkIfFull() {
+        if (chunkBytes == Hashing.chunkSize) {
+            chunkDigests.writeBytes(chunk.digest());
+            chunk = algorithm.newHasher();
+            chunkBytes = 0;
+        }
+        return Hashing.chunkSize - chunkBytes;
+    }
+}
@@ -0,0 +1,8 @@
+package org.exbio.pipejar.util;
+
+/**
+ * A file whose content is compressed with the given codec when the framework writes it.
+ */
+public interface CompressedFile {
+    Compression getCompression();
+}
@@ -0,0 +1,120 @@
+package org.exbio.pipejar.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The codecs available for compressing files written by the framework.
+ * <p>
+ * Readers do not need to know the codec of a file, since compressed content is detected by its magic bytes.
+ */
+public enum Compression {
+    NONE("") {
+        @Override
+        public OutputStream newOutputStream(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        OutputStream newMember(OutputStream out) {
+            return out;
+        }
+    },
+    /**
+     * Gzip, compressed in parallel blocks. Every block is a complete gzip member, which standard tools decompress like
+     * a single one.
+     */
+    GZIP(".gz") {
+        @Override
+        public OutputStream newOutputStream(OutputStream out) {
+            return new ParallelGzipOutputStream(out);
+        }
+
+        @Override
+        OutputStream newMember(OutputStream out) throws IOException {
+            return new GZIPOutputStream(new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // Only the member ends, the underlying stream is kept open
+                    flush();
+                }
+            }, bufferSize);
+        }
+    };
+
+    private static final int bufferSize = 1 << 16;
+    private static final int gzipMagic = 0x8b1f;
+
+    private final String suffix;
+
+    Compression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * @return the conventional file name suffix of the codec
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Wraps a stream, so that everything written to it is compressed. Closing the returned stream closes the given
+     * one.
+     */
+    public abstract OutputStream newOutputStream(OutputStream out);
+
+    /**
+     * Wraps a stream for writing one self-contained compressed member, e.g. for appending to a compressed file.
+     * Closing the returned stream ends the member, but keeps the given stream open.
+     */
+    abstract OutputStream newMember(OutputStream out) throws IOException;
+
+    /**
+     * @return the codec declared for the file, {@link #NONE} if none has been declared
+     */
+    public static Compression declaredFor(File file) {
+        return file instanceof CompressedFile compressedFile ? compressedFile.getCompression() : NONE;
+    }
+
+    /**
+     * Detects the codec of the content of the file by its magic bytes.
+     */
+    public static Compression detect(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return readMagic(in) == gzipMagic ? GZIP : NONE;
+        }
+    }
+
+    /**
+     * Returns the codec to use when appending to the file: the detected one if the file has content, otherwise the
+     * declared one.
+     */
+    public static Compression forAppending(File file) throws IOException {
+        return file.length() > 0 ? detect(file) : declaredFor(file);
+    }
+
+    /**
+     * Opens the file for reading, decompressing its content if necessary.
+     */
+    public static InputStream newInputStream(File file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), bufferSize);
+        in.mark(2);
+        int magic = readMagic(in);
+        in.reset();
+        return magic == gzipMagic ? new GZIPInputStream(in, bufferSize) : in;
+    }
+
+    private static int readMagic(InputStream in) throws IOException {
+        int first = in.read();
+        int second = in.read();
+        return first < 0 || second < 0 ? -1 : first | second << 8;
+    }
+}
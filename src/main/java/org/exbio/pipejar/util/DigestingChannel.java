@@ -0,0 +1,44 @@
+package org.exbio.pipejar.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * Calculates the digest of all written bytes and passes it to a consumer once the channel is closed.
+ */
+public class DigestingChannel implements WritableByteChannel {
+    private final WritableByteChannel channel;
+    private final ChunkedDigest digest;
+    private final Consumer<String> onClose;
+
+    public DigestingChannel(WritableByteChannel channel, HashAlgorithm algorithm, Consumer<String> onClose) {
+        this.channel = channel;
+        this.digest = new ChunkedDigest(algorithm);
+        this.onClose = onClose;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ByteBuffer written = src.duplicate();
+        int count = channel.write(src);
+        written.limit(written.position() + count);
+        digest.update(written);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        channel.close();
+        onClose.accept(digest.digest());
+    }
+}
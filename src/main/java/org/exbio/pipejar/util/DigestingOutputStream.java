@@ -0,0 +1,43 @@
+package org.exbio.pipejar.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Calculates the digest of all written bytes and passes it to a consumer once the stream is closed.
+ */
+public class DigestingOutputStream extends FilterOutputStream {
+    private final ChunkedDigest digest;
+    private final Consumer<String> onClose;
+    private boolean closed = false;
+
+    public DigestingOutputStream(OutputStream out, HashAlgorithm algorithm, Consumer<String> onClose) {
+        super(out);
+        this.digest = new ChunkedDigest(algorithm);
+        this.onClose = onClose;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        digest.update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        digest.update(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        super.close();
+        onClose.accept(digest.digest());
+    }
+}
@@ -0,0 +1,201 @@
+package org.exbio.pipejar.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Caches directory listings and compiled file name patterns for repeated lookups in the same directories.
+ * <p>
+ * A listing is reused as long as the modification time of its directory did not change. Listings taken within the
+ * last seconds after a modification are not reused, since further modifications within the timestamp granularity of
+ * the file system would go unnoticed. Checking the modification time still costs one file system access per lookup.
+ * <p>
+ * In long-running processes, {@link #enableWatching()} replaces the check of the modification time by a
+ * {@link WatchService}, so that lookups do not access the file system at all. Changes made by other processes are
+ * then noticed with a short delay. Changes made through {@link FileManagement} are noticed immediately in both modes.
+ */
+public class DirectoryIndex {
+    private static final long minimumAgeMillis = 2000;
+    private static final int maxSnapshots = 4096;
+    private static final int maxPatterns = 1024;
+
+    private static final Map<Path, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private static final Map<Path, AtomicLong> versions = new ConcurrentHashMap<>();
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+    private static volatile WatchService watchService = null;
+
+    private DirectoryIndex() {
+    }
+
+    /**
+     * Returns the first entry of the directory whose name matches the regex.
+     *
+     * @param lookingForFiles if true, only files are returned, otherwise only directories
+     * @return the entry or null if there is none or the directory cannot be listed
+     */
+    public static File find(File directory, String fileNameRegex, boolean lookingForFiles) {
+        Snapshot snapshot = getSnapshot(directory.toPath().toAbsolutePath().normalize());
+        if (snapshot == null) {
+            return null;
+        }
+        Pattern pattern = getPattern(fileNameRegex);
+        for (Entry entry : snapshot.entries()) {
+            if ((lookingForFiles ? entry.isFile() : entry.isDirectory()) && pattern.matcher(entry.name()).matches()) {
+                return new File(directory, entry.name());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the compiled pattern of the regex, compiling it only once.
+     */
+    public static Pattern getPattern(String regex) {
+        Pattern pattern = patterns.get(regex);
+        if (pattern == null) {
+            if (patterns.size() >= maxPatterns) {
+                patterns.clear();
+            }
+            pattern = patterns.computeIfAbsent(regex, Pattern::compile);
+        }
+        return pattern;
+    }
+
+    /**
+     * Discards the cached listing of the directory.
+     */
+    public static void invalidate(File directory) {
+        if (directory != null) {
+            invalidate(directory.toPath().toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Watches the listed directories for changes instead of checking their modification time on every lookup.
+     */
+    public static synchronized void enableWatching() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        WatchService service = FileSystems.getDefault().newWatchService();
+        Thread watcher = new Thread(() -> watch(service), "directory-index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        snapshots.clear();
+        watchService = service;
+    }
+
+    private static void invalidate(Path directory) {
+        AtomicLong version = versions.get(directory);
+        if (version != null) {
+            version.incrementAndGet();
+        }
+        snapshots.remove(directory);
+    }
+
+    private static void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        versions.values().forEach(AtomicLong::incrementAndGet);
+                        snapshots.clear();
+                    }
+                }
+                invalidate(directory);
+                if (!key.reset()) {
+                    // The directory has been deleted
+                    versions.remove(directory);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignore) {
+        }
+    }
+
+    private static Snapshot getSnapshot(Path directory) {
+        Snapshot snapshot = snapshots.get(directory);
+        if (snapshot != null && snapshot.version() >= 0) {
+            AtomicLong version = versions.get(directory);
+            if (version != null && version.get() == snapshot.version()) {
+                return snapshot;
+            }
+        }
+
+        FileTime lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(directory);
+        } catch (IOException e) {
+            snapshots.remove(directory);
+            return null;
+        }
+        if (snapshot != null && snapshot.version() < 0 && snapshot.lastModified().equals(lastModified) &&
+                lastModified.toMillis() < snapshot.listedAt() - minimumAgeMillis) {
+            return snapshot;
+        }
+
+        long listedAt = System.currentTimeMillis();
+        // Read the version and register before listing, so that changes during the listing invalidate it
+        long version = register(directory);
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                entries.add(Entry.of(entry));
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            snapshots.remove(directory);
+            return null;
+        }
+
+        if (snapshots.size() >= maxSnapshots) {
+            snapshots.clear();
+        }
+        snapshot = new Snapshot(List.copyOf(entries), lastModified, listedAt, version);
+        snapshots.put(directory, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * @return the current version of the watched directory, or -1 if it is not watched
+     */
+    private static long register(Path directory) {
+        WatchService service = watchService;
+        if (service == null) {
+            return -1;
+        }
+        AtomicLong version = versions.computeIfAbsent(directory, key -> new AtomicLong());
+        long current = version.get();
+        try {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            return current;
+        } catch (IOException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private record Snapshot(List<Entry> entries, FileTime lastModified, long listedAt, long version) {
+    }
+
+    private record Entry(String name, boolean isFile, boolean isDirectory) {
+        static Entry of(Path path) {
+            String name = path.getFileName().toString();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new Entry(name, attributes.isRegularFile(), attributes.isDirectory());
+            } catch (IOException e) {
+                // E.g. a broken symbolic link
+                return new Entry(name, false, false);
+            }
+        }
+    }
+}
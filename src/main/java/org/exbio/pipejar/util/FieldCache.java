@@ -0,0 +1,40 @@
+package org.exbio.pipejar.util;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Caches the fields of classes, so that every class is scanned by reflection only once per run.
+ */
+public class FieldCache {
+    private static final ClassValue<List<Field>> declaredFields = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            return List.of(type.getDeclaredFields());
+        }
+    };
+
+    private static final ClassValue<List<Field>> publicFields = new ClassValue<>() {
+        @Override
+        protected List<Field> computeValue(Class<?> type) {
+            return List.of(type.getFields());
+        }
+    };
+
+    private FieldCache() {
+    }
+
+    /**
+     * @return the fields declared by the given class, see {@link Class#getDeclaredFields()}
+     */
+    public static List<Field> getDeclaredFields(Class<?> type) {
+        return declaredFields.get(type);
+    }
+
+    /**
+     * @return the public fields of the given class including inherited ones, see {@link Class#getFields()}
+     */
+    public static List<Field> getFields(Class<?> type) {
+        return publicFields.get(type);
+    }
+}
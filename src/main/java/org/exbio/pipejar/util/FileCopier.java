@@ -0,0 +1,121 @@
+package org.exbio.pipejar.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies files without passing their content through the Java heap.
+ * <p>
+ * The cheapest available method is used:
+ * <ol>
+ *     <li>a hard link, if the caller guarantees that the copy is never modified</li>
+ *     <li>a reflink, i.e. a copy-on-write clone on file systems like btrfs or xfs, for large files</li>
+ *     <li>a copy inside the kernel via {@link FileChannel#transferTo}</li>
+ * </ol>
+ */
+class FileCopier {
+    /**
+     * Reflinks are created by an external process, which is only worth it for large files.
+     */
+    private static final long reflinkThreshold = 8L << 20;
+    /**
+     * Whether reflinks work on a file store, so that unsupported file stores are only probed once.
+     */
+    private static final Map<FileStore, Boolean> reflinkSupport = new ConcurrentHashMap<>();
+    private static volatile boolean reflinkAvailable = true;
+
+    private FileCopier() {
+    }
+
+    /**
+     * Copies a regular file, replacing the target if it exists. The permissions of the source are kept.
+     *
+     * @param readOnly if true, the target may share its data with the source, so neither may be modified afterwards
+     */
+    static void copy(Path source, Path target, boolean readOnly) throws IOException {
+        // Links must point to the data, not to a symbolic link
+        source = source.toRealPath();
+        Files.deleteIfExists(target);
+
+        if (readOnly && tryHardLink(source, target)) {
+            return;
+        }
+        if (Files.size(source) >= reflinkThreshold && tryReflink(source, target)) {
+            return;
+        }
+        transfer(source, target);
+    }
+
+    private static boolean tryHardLink(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            if (e instanceof NoSuchFileException noSuchFile) {
+                throw noSuchFile;
+            }
+            return false;
+        }
+    }
+
+    private static boolean tryReflink(Path source, Path target) throws IOException {
+        if (!reflinkAvailable) {
+            return false;
+        }
+        FileStore store = Files.getFileStore(source);
+        if (!store.equals(Files.getFileStore(target.toAbsolutePath().getParent())) ||
+                !reflinkSupport.getOrDefault(store, true)) {
+            return false;
+        }
+
+        Process process;
+        try {
+            process = new ProcessBuilder("cp", "--reflink=always", "--", source.toString(),
+                    target.toString()).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            // No compatible cp on this system
+            reflinkAvailable = false;
+            return false;
+        }
+
+        try {
+            if (process.waitFor() == 0) {
+                reflinkSupport.put(store, true);
+                return true;
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying " + source, e);
+        }
+        reflinkSupport.put(store, false);
+        Files.deleteIfExists(target);
+        return false;
+    }
+
+    private static void transfer(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred == 0) {
+                    // The source has been truncated in the meantime
+                    break;
+                }
+                position += transferred;
+            }
+        }
+
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view != null) {
+            view.setPermissions(Files.getPosixFilePermissions(source));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.exbio.pipejar.util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Calculates the digest of the content of a single file.
+ */
+@FunctionalInterface
+public interface FileDigester {
+    String digest(File file) throws IOException;
+}
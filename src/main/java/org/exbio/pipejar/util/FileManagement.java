@@ -1,39 +1,94 @@
 package org.exbio.pipejar.util;
 
-import org.exbio.pipejar.util.FileFilters.Filters;
-
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
-import java.util.Scanner;
-
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class FileManagement {
+    /**
+     * File system operations mostly wait for I/O, so more threads than cores are used.
+     */
+    private static final ForkJoinPool ioPool =
+            new ForkJoinPool(Math.max(8, 2 * Runtime.getRuntime().availableProcessors()));
+    private static final int batchSize = 256;
+    private static final String trashMarker = ".trash-";
+    private static final Map<Path, CompletableFuture<Void>> pendingDeletions = new ConcurrentHashMap<>();
+    private static final NavigableSet<String> knownDirectories = new ConcurrentSkipListSet<>();
 
     public static String readFile(File file) throws IOException {
         return Files.readString(file.toPath());
     }
 
     public static List<String> readLines(File file) throws IOException {
-        List<String> raw = Files.readAllLines(file.toPath());
-        List<String> trimmed = new ArrayList<>();
-        for (String rawLine : raw) {
-            trimmed.add(rawLine.replace("\n", "").replace("\r", ""));
+        try (Stream<String> lines = streamLines(file)) {
+            return lines.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return trimmed;
+    }
+
+    /**
+     * Streams the lines of a UTF-8 encoded file without loading it into memory, see {@link LineReader}. Compressed
+     * files are decompressed on the fly. Malformed input is reported by an {@link UncheckedIOException}.
+     */
+    public static Stream<String> streamLines(File file) throws IOException {
+        // Special files like pipes cannot be opened twice, so they are not checked for compression
+        if (!Files.isRegularFile(file.toPath()) || Compression.detect(file) == Compression.NONE) {
+            return LineReader.lines(file);
+        }
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Compression.newInputStream(file), StandardCharsets.UTF_8.newDecoder()));
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     public static void copyFile(File source, File target) throws IOException {
+        copyFile(source, target, false);
+    }
+
+    /**
+     * Copies a file without reading it into memory. Large files are cloned on file systems supporting copy-on-write.
+     *
+     * @param readOnly if true, the copy may be a hard link to the source, so neither of them may be modified later
+     */
+    public static void copyFile(File source, File target, boolean readOnly) throws IOException {
         target.getParentFile().mkdirs();
-        Files.copy(source.toPath(), target.toPath(), REPLACE_EXISTING);
+        FileCopier.copy(source.toPath(), target.toPath(), readOnly);
+        DirectoryIndex.invalidate(target.getAbsoluteFile().getParentFile());
     }
 
     public static void copyDirectory(File source, File target) throws IOException {
@@ -41,13 +96,42 @@ public class FileManagement {
     }
 
     public static void copyDirectory(File source, File target, FileFilter filter) throws IOException {
-        for (File sourceFile : Objects.requireNonNull(source.listFiles(filter))) {
-            if (sourceFile.isFile()) {
-                copyFile(sourceFile, extend(target, sourceFile.getName()));
-            } else {
-                copyDirectory(sourceFile, extend(target, sourceFile.getName()), filter);
+        copyDirectory(source, target, filter, false);
+    }
+
+    /**
+     * Copies all files accepted by the filter. Subdirectories and large directories are copied in parallel.
+     *
+     * @param readOnly if true, the copies may be hard links, see {@link #copyFile(File, File, boolean)}
+     */
+    public static void copyDirectory(File source, File target, FileFilter filter, boolean readOnly)
+            throws IOException {
+        ForkJoinTasks.invoke(ioPool, copyTask(source, target, filter, readOnly));
+    }
+
+    private static RecursiveTask<Void> copyTask(File source, File target, FileFilter filter, boolean readOnly) {
+        return ForkJoinTasks.task(() -> {
+            List<File> files = new ArrayList<>();
+            List<RecursiveTask<Void>> tasks = new ArrayList<>();
+            for (File sourceFile : Objects.requireNonNull(source.listFiles(filter))) {
+                if (sourceFile.isFile()) {
+                    files.add(sourceFile);
+                } else {
+                    tasks.add(copyTask(sourceFile, extend(target, sourceFile.getName()), filter, readOnly));
+                }
             }
-        }
+
+            for (List<File> batch : partition(files)) {
+                tasks.add(ForkJoinTasks.task(() -> {
+                    for (File sourceFile : batch) {
+                        copyFile(sourceFile, extend(target, sourceFile.getName()), readOnly);
+                    }
+                    return null;
+                }));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            return null;
+        });
     }
 
     public static void writeHTML(File file, String content, int relativationDepth) throws IOException {
@@ -66,71 +150,129 @@ public class FileManagement {
         }
     }
 
+    /**
+     * Returns the value of the result column in the first line whose search column matches the term. The file is
+     * indexed on the first lookup, see {@link TableIndex}.
+     */
     public static String findValueInTable(String term, int searchIndex, int resultIndex, File file, String sep,
                                           boolean ignoreCase) throws FileNotFoundException, NoSuchFieldException {
         if (file.isFile()) {
-            try (Scanner scanner = new Scanner(file)) {
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    if (line.split(sep).length > searchIndex && line.split(sep).length > resultIndex) {
-
-                        if (term.equals(line.split(sep)[searchIndex]) ||
-                                ignoreCase && term.equalsIgnoreCase(line.split(sep)[searchIndex])) {
-                            return line.split(sep)[resultIndex];
-                        }
-                    }
-                }
+            String value;
+            try {
+                value = Compression.detect(file) == Compression.NONE ?
+                        TableIndex.of(file, sep, searchIndex).find(term, resultIndex, ignoreCase) :
+                        scanTable(term, searchIndex, resultIndex, file, sep, ignoreCase);
+            } catch (IOException | UncheckedIOException e) {
+                throw (FileNotFoundException) new FileNotFoundException(
+                        "Could not read " + file.getAbsolutePath() + ": " + e.getMessage()).initCause(e);
+            }
+            if (value != null) {
+                return value;
             }
         }
         throw new NoSuchFieldException(
                 "Could not find term \"" + term + "\" in column " + searchIndex + " of " + file.getAbsolutePath());
     }
 
+    /**
+     * Looks up a value without an index, for compressed tables.
+     */
+    private static String scanTable(String term, int searchIndex, int resultIndex, File file, String sep,
+                                    boolean ignoreCase) throws IOException {
+        try (Stream<String> lines = streamLines(file)) {
+            return lines.map(line -> line.split(sep)).filter(
+                    split -> split.length > searchIndex && split.length > resultIndex).filter(
+                    split -> ignoreCase ? term.equalsIgnoreCase(split[searchIndex]) :
+                            term.equals(split[searchIndex])).map(split -> split[resultIndex]).findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Returns the first file or directory whose name matches the regex. The listing of the directory is cached, see
+     * {@link DirectoryIndex}.
+     */
     public static File getFileIfInDirectory(File directory, String fileNameRegex, boolean lookingForFiles) {
         if (directory == null) {
             return null;
         }
+        return DirectoryIndex.find(directory, fileNameRegex, lookingForFiles);
+    }
 
-        if (directory.listFiles() == null) {
-            return null;
+    /**
+     * Creates the file and its parent directories if they do not exist. Safe to be called concurrently for the same
+     * file.
+     */
+    public static void makeSureFileExists(File file) throws IOException {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        if (Files.exists(path)) {
+            return;
         }
-
-        for (File entry : Objects.requireNonNull(
-                directory.listFiles(lookingForFiles ? Filters.fileFilter : Filters.directoryFilter))) {
-            if (entry.getName().matches(fileNameRegex)) {
-                return entry;
+        Path parent = path.getParent();
+        try {
+            if (parent != null) {
+                makeSureDirectoryExists(parent.toFile());
             }
-        }
-        return null;
-    }
-
-    public static synchronized void makeSureFileExists(File file) throws IOException {
-        if (!file.exists()) {
             try {
-                if (!file.getParentFile().exists()) {
-                    if (!file.getParentFile().mkdirs()) {
-                        throw new IOException("parent directory");
-                    }
-                }
-                if (!file.createNewFile()) {
-                    throw new IOException("file");
+                Files.createFile(path);
+            } catch (NoSuchFileException e) {
+                if (parent == null) {
+                    throw e;
                 }
-            } catch (IOException e) {
-                throw new IOException(
-                        "Exception during creation of: " + file.getAbsolutePath() + " (" + e.getMessage() + ")");
+                // The parent directory has been deleted without notice
+                forgetDirectories(parent);
+                makeSureDirectoryExists(parent.toFile());
+                Files.createFile(path);
             }
+            if (parent != null) {
+                DirectoryIndex.invalidate(parent.toFile());
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Created concurrently
+        } catch (IOException e) {
+            throw new IOException(
+                    "Exception during creation of: " + file.getAbsolutePath() + " (" + e.getMessage() + ")");
         }
     }
 
-
-    public static synchronized void makeSureDirectoryExists(File directory) throws IOException {
-        if (directory.isFile()) {
+    /**
+     * Creates the directory and its parents if they do not exist. Safe to be called concurrently for the same
+     * directory.
+     * <p>
+     * Directories known to exist are remembered, so that later calls do not access the file system. Directories
+     * deleted with {@link #deleteFileStructure(File)} or {@link #moveToTrash(File)} are forgotten again.
+     */
+    public static void makeSureDirectoryExists(File directory) throws IOException {
+        Path path = directory.toPath().toAbsolutePath().normalize();
+        if (knownDirectories.contains(path.toString())) {
+            return;
+        }
+        if (Files.isRegularFile(path)) {
             throw new IllegalArgumentException("Can not handle files. Received: " + directory.getAbsolutePath());
         }
-        if (!directory.exists()) {
-            if (!directory.mkdirs()) {
-                throw new IOException("Could not create directory: " + directory.getAbsolutePath());
+        try {
+            Files.createDirectories(path);
+        } catch (IOException e) {
+            throw new IOException("Could not create directory: " + directory.getAbsolutePath(), e);
+        }
+        if (path.getParent() != null) {
+            DirectoryIndex.invalidate(path.getParent().toFile());
+        }
+        knownDirectories.add(path.toString());
+    }
+
+    /**
+     * Removes the directory and everything below it from the known directories.
+     */
+    private static void forgetDirectories(Path path) {
+        String directory = path.toAbsolutePath().normalize().toString();
+        knownDirectories.remove(directory);
+
+        String prefix = directory.endsWith(File.separator) ? directory : directory + File.separator;
+        for (String known : knownDirectories.tailSet(prefix)) {
+            if (!known.startsWith(prefix)) {
+                break;
             }
+            knownDirectories.remove(known);
         }
     }
 
@@ -139,7 +281,20 @@ public class FileManagement {
         makeSureFileExists(file);
 
         try {
-            Files.write(file.toPath(), content.getBytes(), StandardOpenOption.APPEND);
+            // Only files declaring a codec are inspected, so that plain appends do not open the file twice
+            Compression compression = Compression.declaredFor(file);
+            if (compression != Compression.NONE) {
+                compression = Compression.forAppending(file);
+            }
+            if (compression == Compression.NONE) {
+                Files.write(file.toPath(), content.getBytes(), StandardOpenOption.APPEND);
+            } else {
+                // Compressed files are extended by another member
+                try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND);
+                     OutputStream member = compression.newMember(out)) {
+                    member.write(content.getBytes());
+                }
+            }
         } catch (IOException e) {
             throw new IOException("Could not append content to file: " + file.getAbsolutePath());
         }
@@ -166,6 +321,7 @@ public class FileManagement {
             deleteFileStructure(newLink);
         }
         Files.createLink(newLink.toPath(), existingData.toPath());
+        DirectoryIndex.invalidate(newLink.getAbsoluteFile().getParentFile());
     }
 
 
@@ -181,23 +337,120 @@ public class FileManagement {
         Path relativeSource = link.getParent().relativize(source);
 
         Files.createSymbolicLink(link, relativeSource);
+        DirectoryIndex.invalidate(newLink.getAbsoluteFile().getParentFile());
     }
 
 
+    /**
+     * Deletes a file or directory. Symbolic links are deleted, but not followed. Subdirectories and large directories
+     * are deleted in parallel.
+     */
     public static void deleteFileStructure(File file) throws IOException {
-        if (Files.isSymbolicLink(file.toPath())) {
-            Files.delete(file.toPath());
-            return;
+        Path path = file.toPath();
+        try {
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            ForkJoinTasks.invoke(ioPool, deleteTask(path));
+        } finally {
+            forgetDirectories(path);
+            DirectoryIndex.invalidate(file.getAbsoluteFile().getParentFile());
         }
+    }
 
-        if (file.exists()) {
-            if (file.isDirectory()) {
-                for (File subFile : Objects.requireNonNull(file.listFiles())) {
-                    deleteFileStructure(subFile);
+    private static RecursiveTask<Void> deleteTask(Path directory) {
+        return ForkJoinTasks.task(() -> {
+            List<Path> files = new ArrayList<>();
+            List<RecursiveTask<Void>> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(deleteTask(entry));
+                    } else {
+                        files.add(entry);
+                    }
                 }
             }
-            Files.delete(file.toPath());
+
+            for (List<Path> batch : partition(files)) {
+                tasks.add(ForkJoinTasks.task(() -> {
+                    for (Path entry : batch) {
+                        Files.deleteIfExists(entry);
+                    }
+                    return null;
+                }));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            Files.deleteIfExists(directory);
+            return null;
+        });
+    }
+
+    /**
+     * Removes a file or directory from its location right away and deletes it in the background.
+     * <p>
+     * The file is renamed within its parent directory, which is atomic and does not depend on its size. If renaming
+     * is not possible, it is deleted directly. Leftovers of earlier background deletions of the same file, e.g. after
+     * the program has been terminated, are deleted as well.
+     */
+    public static void moveToTrash(File file) throws IOException {
+        Path path = file.toPath().toAbsolutePath();
+        Path parent = path.getParent();
+        String prefix = "." + path.getFileName() + trashMarker;
+
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            forgetDirectories(path);
+            DirectoryIndex.invalidate(parent.toFile());
+            Path trash = parent.resolve(prefix + UUID.randomUUID());
+            try {
+                Files.move(path, trash, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | UnsupportedOperationException e) {
+                deleteFileStructure(file);
+            }
+        }
+
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(parent, prefix + "*")) {
+            for (Path leftover : leftovers) {
+                pendingDeletions.computeIfAbsent(leftover, key -> CompletableFuture.runAsync(() -> {
+                    try {
+                        deleteFileStructure(key.toFile());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        pendingDeletions.remove(key);
+                    }
+                }, ioPool));
+            }
+        } catch (NoSuchFileException ignore) {
+        }
+    }
+
+    /**
+     * Waits until all deletions started by {@link #moveToTrash(File)} have finished.
+     *
+     * @throws IOException if any of them failed
+     */
+    public static void awaitPendingDeletions() throws IOException {
+        IOException failure = null;
+        for (CompletableFuture<Void> deletion : List.copyOf(pendingDeletions.values())) {
+            try {
+                deletion.join();
+            } catch (CompletionException e) {
+                failure = new IOException("Could not delete trash: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static <T> List<List<T>> partition(List<T> list) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int start = 0; start < list.size(); start += batchSize) {
+            batches.add(list.subList(start, Math.min(list.size(), start + batchSize)));
         }
+        return batches;
     }
 
     public static boolean recreateDirectory(File file) throws IOException {
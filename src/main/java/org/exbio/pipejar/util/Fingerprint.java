@@ -0,0 +1,37 @@
+package org.exbio.pipejar.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The status of a file: device, inode, size, modification and change time. A file whose fingerprint did not change
+ * still has the same content.
+ */
+record Fingerprint(String fileKey, long size, long lastModified, long changed, long lastModifiedMillis) {
+    static Fingerprint of(Path path) throws IOException {
+        try {
+            Map<String, Object> attributes = Files.readAttributes(path, "unix:dev,ino,size,lastModifiedTime,ctime");
+            FileTime lastModified = (FileTime) attributes.get("lastModifiedTime");
+            FileTime changed = (FileTime) attributes.get("ctime");
+            return new Fingerprint(attributes.get("dev") + ":" + attributes.get("ino"), (Long) attributes.get("size"),
+                    lastModified.to(TimeUnit.NANOSECONDS), changed.to(TimeUnit.NANOSECONDS), lastModified.toMillis());
+        } catch (UnsupportedOperationException e) {
+            // No unix attributes available, fall back to the attributes supported on all platforms
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Fingerprint(Objects.toString(attributes.fileKey(), path.toRealPath().toString()),
+                    attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), 0,
+                    attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    String toLine() {
+        return String.join("\t", fileKey, String.valueOf(size), String.valueOf(lastModified), String.valueOf(changed),
+                String.valueOf(lastModifiedMillis));
+    }
+}
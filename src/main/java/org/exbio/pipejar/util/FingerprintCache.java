@@ -0,0 +1,89 @@
+package org.exbio.pipejar.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Caches file digests by the status of the file, i.e. device, inode, size, modification and change time.
+ * <p>
+ * A file whose status did not change since it has been hashed reuses the cached digest instead of being read again.
+ * Files modified within the last seconds before hashing are not cached, since further modifications within the
+ * timestamp granularity of the file system would go unnoticed. In paranoid mode every file is hashed again, but the
+ * cache is still updated.
+ */
+public class FingerprintCache implements FileDigester {
+    private static final long minimumAgeMillis = 2000;
+
+    private final FileDigester digester;
+    private final boolean paranoid;
+    private final Map<Fingerprint, String> cached = new ConcurrentHashMap<>();
+    private final Map<Fingerprint, String> used = new ConcurrentHashMap<>();
+
+    public FingerprintCache(FileDigester digester, boolean paranoid) {
+        this.digester = digester;
+        this.paranoid = paranoid;
+    }
+
+    @Override
+    public String digest(File file) throws IOException {
+        long hashingStarted = System.currentTimeMillis();
+        Fingerprint before = Fingerprint.of(file.toPath());
+
+        String digest = paranoid ? null : cached.get(before);
+        if (digest == null) {
+            digest = digester.digest(file);
+
+            // Only cache the digest if the file did not change while hashing and is old enough
+            if (before.equals(Fingerprint.of(file.toPath())) &&
+                    before.lastModifiedMillis() < hashingStarted - minimumAgeMillis) {
+                cached.put(before, digest);
+            }
+        }
+
+        if (cached.containsKey(before)) {
+            used.put(before, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Loads the entries stored in the given file. Lines that cannot be parsed are ignored.
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        for (String line : FileManagement.readLines(file)) {
+            String[] split = line.split("\t");
+            if (split.length == 6) {
+                try {
+                    cached.put(new Fingerprint(split[0], Long.parseLong(split[1]), Long.parseLong(split[2]),
+                            Long.parseLong(split[3]), Long.parseLong(split[4])), split[5]);
+                } catch (NumberFormatException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a digest calculated while writing the file. The entry is only stored if the file is old enough when the
+     * cache is saved.
+     */
+    void record(Fingerprint fingerprint, String digest) {
+        cached.put(fingerprint, digest);
+        used.put(fingerprint, digest);
+    }
+
+    /**
+     * Stores the entries used since this cache has been created, so that entries of deleted files do not pile up.
+     */
+    public void save(File file) throws IOException {
+        long savingStarted = System.currentTimeMillis();
+        FileManagement.writeFile(file, used.entrySet().stream().filter(
+                entry -> entry.getKey().lastModifiedMillis() < savingStarted - minimumAgeMillis).map(
+                entry -> entry.getKey().toLine() + "\t" + entry.getValue() + "\n").collect(Collectors.joining()));
+    }
+}
@@ -0,0 +1,45 @@
+package org.exbio.pipejar.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Helpers for running file system work as fork join tasks that may throw {@link IOException}s.
+ */
+class ForkJoinTasks {
+    private ForkJoinTasks() {
+    }
+
+    /**
+     * Runs the given task inside the given pool, or directly if the current thread already belongs to a fork join
+     * pool.
+     */
+    static <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task) throws IOException {
+        try {
+            return ForkJoinTask.inForkJoinPool() ? task.invoke() : pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    static <T> RecursiveTask<T> task(IOCallable<T> callable) {
+        return new RecursiveTask<>() {
+            @Override
+            protected T compute() {
+                try {
+                    return callable.call();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface IOCallable<T> {
+        T call() throws IOException;
+    }
+}
@@ -0,0 +1,60 @@
+package org.exbio.pipejar.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The hash functions available for hashing files.
+ */
+public enum HashAlgorithm {
+    MD5 {
+        @Override
+        public Hasher newHasher() {
+            return messageDigestHasher("MD5");
+        }
+    },
+    SHA_256 {
+        @Override
+        public Hasher newHasher() {
+            return messageDigestHasher("SHA-256");
+        }
+    },
+    /**
+     * The 128-bit variant of MurmurHash3. Not cryptographically secure, but considerably faster.
+     */
+    MURMUR3_128 {
+        @Override
+        public Hasher newHasher() {
+            return new Murmur3Hasher();
+        }
+    };
+
+    public abstract Hasher newHasher();
+
+    private static Hasher messageDigestHasher(String name) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Hash algorithm not available: " + name);
+        }
+
+        return new Hasher() {
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                digest.update(bytes, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer buffer) {
+                digest.update(buffer);
+            }
+
+            @Override
+            public byte[] digest() {
+                return digest.digest();
+            }
+        };
+    }
+}
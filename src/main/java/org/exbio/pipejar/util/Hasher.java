@@ -0,0 +1,17 @@
+package org.exbio.pipejar.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An incremental hash function.
+ */
+public interface Hasher {
+    void update(byte[] bytes, int offset, int length);
+
+    void update(ByteBuffer buffer);
+
+    /**
+     * Completes the hash calculation. The hasher must not be used afterwards.
+     */
+    byte[] digest();
+}
@@ -3,44 +3,167 @@ package org.exbio.pipejar.util;
 import org.exbio.pipejar.util.Comparators.FileComparator;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.List;
-import java.util.Vector;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
 
 public class Hashing {
+    /**
+     * Files larger than this are hashed in chunks of this size. The file digest is then the digest of the
+     * concatenated chunk digests, otherwise it is the digest of the content.
+     */
+    public static final int chunkSize = 64 * 1024 * 1024;
+    private static final int mappingThreshold = 1024 * 1024;
+    private static final int maxOpenFiles = 64;
+
+    private static final ForkJoinPool hashingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private static final Semaphore openFiles = new Semaphore(maxOpenFiles);
+    private static final ThreadLocal<ByteBuffer> readBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(64 * 1024));
+    private static volatile HashAlgorithm algorithm = HashAlgorithm.MD5;
+
     public static String hash(String text) {
         MessageDigest digest = getMessageDigest();
         byte[] hashBytes = digest.digest(text.getBytes(StandardCharsets.UTF_8));
         return bytesToString(hashBytes);
     }
 
+    public static String hash(String text, HashAlgorithm algorithm) {
+        Hasher hasher = algorithm.newHasher();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        hasher.update(bytes, 0, bytes.length);
+        return bytesToString(hasher.digest());
+    }
+
+    public static HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Sets the algorithm used for hashing files and file trees. Changing it invalidates all stored hashes.
+     */
+    public static void setAlgorithm(HashAlgorithm algorithm) {
+        Hashing.algorithm = algorithm;
+    }
+
+    /**
+     * Hashes a file or directory in compatibility mode: the content of all files is streamed through a single MD5
+     * digest in path order.
+     */
     public static String hashFile(File file) throws IOException {
         return hashFile(file, pathname -> pathname.isFile() || !pathname.getName().equals("__pycache__"));
     }
 
     public static String hashFile(File file, FileFilter filter) throws IOException {
-        Vector<FileInputStream> fileStreams = new Vector<>();
-        collectInputStreams(file, fileStreams, filter);
+        List<File> files = new ArrayList<>();
+        collectFiles(file, files, filter);
 
         MessageDigest md = getMessageDigest();
-        try (SequenceInputStream seqStream = new SequenceInputStream(fileStreams.elements());
+        try (SequenceInputStream seqStream = new SequenceInputStream(new LazyInputStreams(files));
              DigestInputStream stream = new DigestInputStream(seqStream, md)) {
             byte[] buffer = new byte[1024 * 8];
             while (stream.read(buffer) != -1) {
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 
         return bytesToString(md.digest());
     }
 
-    private static void collectInputStreams(File file, Collection<FileInputStream> foundStreams, FileFilter filter) throws FileNotFoundException {
+    /**
+     * Hashes the content of a single file with the given algorithm.
+     * <p>
+     * Large files are memory mapped and their chunks are hashed in parallel. The digest only depends on the content
+     * and the algorithm.
+     */
+    public static String hashFile(File file, HashAlgorithm algorithm) throws IOException {
+        long size = file.length();
+        if (size <= chunkSize) {
+            return bytesToString(hashChunk(file, 0, size, algorithm));
+        }
+
+        List<RecursiveTask<byte[]>> chunks = new ArrayList<>();
+        for (long position = 0; position < size; position += chunkSize) {
+            long start = position;
+            long length = Math.min(chunkSize, size - position);
+            chunks.add(ForkJoinTasks.task(() -> hashChunk(file, start, length, algorithm)));
+        }
+
+        Hasher combined = algorithm.newHasher();
+        invoke(ForkJoinTasks.task(() -> {
+            ForkJoinTask.invokeAll(chunks);
+            return null;
+        }));
+        for (RecursiveTask<byte[]> chunk : chunks) {
+            byte[] digest = chunk.join();
+            combined.update(digest, 0, digest.length);
+        }
+        return bytesToString(combined.digest());
+    }
+
+    /**
+     * Hashes a file tree in parallel. The digest is the root digest of the corresponding {@link MerkleTree}.
+     *
+     * @return the digest or an empty string if the file does not exist
+     */
+    public static String hashTree(File file, FileFilter filter, HashAlgorithm algorithm) throws IOException {
+        MerkleTree tree = MerkleTree.build(file, filter, single -> hashFile(single, algorithm), algorithm);
+        return tree == null ? "" : tree.getDigest();
+    }
+
+    /**
+     * Runs the given task inside the hashing pool, or directly if the current thread already belongs to a fork join
+     * pool.
+     */
+    static <T> T invoke(ForkJoinTask<T> task) throws IOException {
+        return ForkJoinTasks.invoke(hashingPool, task);
+    }
+
+    private static byte[] hashChunk(File file, long start, long length, HashAlgorithm algorithm) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+
+        openFiles.acquireUninterruptibly();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (length >= mappingThreshold) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                hasher.update(mapped);
+            } else {
+                ByteBuffer buffer = readBuffers.get();
+                long position = start;
+                long end = start + length;
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                    buffer.flip();
+                    hasher.update(buffer);
+                }
+            }
+        } finally {
+            openFiles.release();
+        }
+
+        return hasher.digest();
+    }
+
+    private static void collectFiles(File file, Collection<File> foundFiles, FileFilter filter) {
         if (file.isFile()) {
-            foundStreams.add(new FileInputStream(file));
+            foundFiles.add(file);
         } else {
             File[] fileList = file.listFiles(filter);
 
@@ -48,7 +171,7 @@ public class Hashing {
                 Arrays.sort(fileList, new FileComparator());
 
                 for (File f : fileList) {
-                    collectInputStreams(f, foundStreams, filter);
+                    collectFiles(f, foundFiles, filter);
                 }
             }
         }
@@ -65,7 +188,7 @@ public class Hashing {
         return digest;
     }
 
-    private static String bytesToString(byte[] bytes) {
+    static String bytesToString(byte[] bytes) {
         byte[] HEX_ARRAY = "0123456789ABCDEF".getBytes(StandardCharsets.UTF_8);
         byte[] hexChars = new byte[bytes.length * 2];
 
@@ -76,4 +199,29 @@ public class Hashing {
         }
         return new String(hexChars, StandardCharsets.UTF_8);
     }
+
+    /**
+     * Opens the files one after another while they are consumed, so that only a single file is open at a time.
+     */
+    private static class LazyInputStreams implements Enumeration<InputStream> {
+        private final Iterator<File> files;
+
+        private LazyInputStreams(Collection<File> files) {
+            this.files = files.iterator();
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return files.hasNext();
+        }
+
+        @Override
+        public InputStream nextElement() {
+            try {
+                return new FileInputStream(files.next());
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
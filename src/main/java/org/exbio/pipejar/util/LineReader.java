@@ -0,0 +1,281 @@
+package org.exbio.pipejar.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the lines of a file from a memory-mapped view, so that memory usage does not depend on the file size.
+ * <p>
+ * Lines end at \n, \r or \r\n, like {@link java.io.BufferedReader#readLine()} expects. Every line is available as a
+ * read-only slice of the mapped file, which is not copied until it is decoded. Streams of lines are split at line
+ * boundaries when processed in parallel.
+ * <p>
+ * The file is mapped in windows of at most 1 GiB, each ending at a line boundary. Mapped memory is not part of the
+ * heap and is paged in and out by the operating system. Lines longer than a window are rejected. Files that cannot
+ * be mapped by their size, e.g. pipes or files of procfs, are read into the heap instead.
+ */
+public class LineReader {
+    private static final int maxWindowSize = 1 << 30;
+    private static final long minSplitSize = 1 << 20;
+    private static final int bufferSize = 1 << 16;
+
+    private final long[] windowStarts;
+    private final long[] windowEnds;
+    private final ByteBuffer[] windows;
+
+    private LineReader(long[] windowStarts, long[] windowEnds, ByteBuffer[] windows) {
+        this.windowStarts = windowStarts;
+        this.windowEnds = windowEnds;
+        this.windows = windows;
+    }
+
+    public static LineReader open(File file) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        List<Long> ends = new ArrayList<>();
+        List<ByteBuffer> windows = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0 || !Files.isRegularFile(file.toPath())) {
+                // The size of special files is not known in advance
+                ByteBuffer content = readFully(channel, file);
+                return content.limit() == 0 ? new LineReader(new long[0], new long[0], new ByteBuffer[0]) :
+                        new LineReader(new long[]{0}, new long[]{content.limit()}, new ByteBuffer[]{content});
+            }
+            long start = 0;
+            while (start < size) {
+                ByteBuffer window =
+                        channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, maxWindowSize));
+                // A window owns the lines starting in it. It ends at a line boundary, unless a single line is longer
+                // than a window.
+                int owned = window.limit();
+                if (start + owned < size) {
+                    int boundary = -1;
+                    for (int i = owned - 1; i >= 0 && boundary < 0; i--) {
+                        byte current = window.get(i);
+                        if (current == '\n' || current == '\r' && i < owned - 1) {
+                            boundary = i + 1;
+                        }
+                    }
+                    if (boundary < 0) {
+                        throw new IOException("Line at offset " + start + " is longer than " + maxWindowSize +
+                                " bytes: " + file.getAbsolutePath());
+                    }
+                    owned = boundary;
+                }
+                starts.add(start);
+                ends.add(start + owned);
+                windows.add(window);
+                start += owned;
+            }
+        }
+        return new LineReader(starts.stream().mapToLong(Long::longValue).toArray(),
+                ends.stream().mapToLong(Long::longValue).toArray(), windows.toArray(ByteBuffer[]::new));
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (channel.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                if (buffer.capacity() == maxWindowSize) {
+                    throw new IOException("File is larger than " + maxWindowSize + " bytes: " + file.getAbsolutePath());
+                }
+                ByteBuffer larger = ByteBuffer.allocate((int) Math.min(2L * buffer.capacity(), maxWindowSize));
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+        }
+        return buffer.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Streams the lines of a file decoded as UTF-8.
+     */
+    public static Stream<String> lines(File file) throws IOException {
+        return open(file).lines(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Streams the lines decoded with the given charset. Like {@link java.nio.file.Files#readAllLines}, malformed input
+     * is not replaced, but reported by an {@link UncheckedIOException}.
+     */
+    public Stream<String> lines(Charset charset) {
+        return slices().map(slice -> decode(slice, charset));
+    }
+
+    /**
+     * Streams the lines as read-only slices of the mapped file, without line terminators.
+     */
+    public Stream<ByteBuffer> slices() {
+        return StreamSupport.stream(new LineSpliterator(0, size()), false);
+    }
+
+    /**
+     * Passes every line with the offset of its first byte to the visitor.
+     */
+    public void forEachLine(LineVisitor visitor) {
+        new LineSpliterator(0, size()).forEachLine(visitor);
+    }
+
+    /**
+     * Returns the line starting at the given offset, which has to be the offset of a line.
+     */
+    public ByteBuffer lineAt(long offset) {
+        int windowIndex = findWindow(offset);
+        ByteBuffer window = windows[windowIndex];
+        int from = (int) (offset - windowStarts[windowIndex]);
+        int owned = (int) (windowEnds[windowIndex] - windowStarts[windowIndex]);
+        int to = from;
+        while (to < owned && window.get(to) != '\n' && window.get(to) != '\r') {
+            to++;
+        }
+        return window.slice(from, to - from).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes a line, reporting malformed input by an {@link UncheckedIOException} instead of replacing it.
+     */
+    static String decode(ByteBuffer slice, Charset charset) {
+        try {
+            return charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(
+                    CodingErrorAction.REPORT).decode(slice).toString();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long size() {
+        return windowEnds.length == 0 ? 0 : windowEnds[windowEnds.length - 1];
+    }
+
+    private int findWindow(long offset) {
+        int windowIndex = Arrays.binarySearch(windowStarts, offset);
+        return windowIndex < 0 ? -windowIndex - 2 : windowIndex;
+    }
+
+    /**
+     * Returns the index after the line terminator at the given index.
+     */
+    private static int skipTerminator(ByteBuffer window, int index, int owned) {
+        if (index >= owned) {
+            return index;
+        }
+        if (window.get(index) == '\r' && index + 1 < owned && window.get(index + 1) == '\n') {
+            return index + 2;
+        }
+        return index + 1;
+    }
+
+    @FunctionalInterface
+    public interface LineVisitor {
+        void visit(long offset, ByteBuffer line);
+    }
+
+    /**
+     * Iterates over the lines in a range of the file. The range always starts at a line boundary.
+     */
+    private class LineSpliterator implements Spliterator<ByteBuffer> {
+        private long position;
+        private final long end;
+
+        LineSpliterator(long position, long end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+            if (position >= end) {
+                return false;
+            }
+            action.accept(next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super ByteBuffer> action) {
+            while (position < end) {
+                action.accept(next());
+            }
+        }
+
+        void forEachLine(LineVisitor visitor) {
+            while (position < end) {
+                long offset = position;
+                visitor.visit(offset, next());
+            }
+        }
+
+        private ByteBuffer next() {
+            int windowIndex = findWindow(position);
+            ByteBuffer window = windows[windowIndex];
+            int from = (int) (position - windowStarts[windowIndex]);
+            int owned = (int) (windowEnds[windowIndex] - windowStarts[windowIndex]);
+
+            int to = from;
+            while (to < owned && window.get(to) != '\n' && window.get(to) != '\r') {
+                to++;
+            }
+            int next = skipTerminator(window, to, owned);
+            position = windowStarts[windowIndex] + next;
+            return window.slice(from, to - from).asReadOnlyBuffer();
+        }
+
+        @Override
+        public Spliterator<ByteBuffer> trySplit() {
+            if (end - position < minSplitSize) {
+                return null;
+            }
+            long boundary = findBoundary(position + (end - position) / 2);
+            if (boundary <= position || boundary >= end) {
+                return null;
+            }
+            LineSpliterator prefix = new LineSpliterator(position, boundary);
+            position = boundary;
+            return prefix;
+        }
+
+        /**
+         * Returns the start of the first line beginning at or after the given offset.
+         */
+        private long findBoundary(long offset) {
+            int windowIndex = findWindow(offset);
+            ByteBuffer window = windows[windowIndex];
+            int owned = (int) (windowEnds[windowIndex] - windowStarts[windowIndex]);
+            int index = (int) (offset - windowStarts[windowIndex]);
+            if (index > 0 && window.get(index - 1) == '\r' && window.get(index) == '\n') {
+                return windowStarts[windowIndex] + index + 1;
+            }
+            while (index < owned && window.get(index) != '\n' && window.get(index) != '\r') {
+                index++;
+            }
+            return windowStarts[windowIndex] + skipTerminator(window, index, owned);
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+}
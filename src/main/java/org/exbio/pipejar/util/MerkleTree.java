@@ -0,0 +1,282 @@
+package org.exbio.pipejar.util;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * A hash manifest of a file structure.
+ * <p>
+ * Every node stores the name, size and digest of a file or directory. The digest of a directory is derived from the
+ * names and digests of its children, so two trees with the same root digest describe the same content. Comparing a
+ * tree against the file system stops at the first difference and reports its path. Trees are built in parallel and
+ * record the {@link HashAlgorithm} their digests have been calculated with.
+ */
+public class MerkleTree {
+    public static final FileFilter defaultFilter =
+            pathname -> pathname.isFile() || !pathname.getName().equals("__pycache__");
+
+    private final String name;
+    private final long size;
+    private final String digest;
+    private final List<MerkleTree> children;
+    private final HashAlgorithm algorithm;
+
+    private MerkleTree(String name, long size, String digest, List<MerkleTree> children, HashAlgorithm algorithm) {
+        this.name = name;
+        this.size = size;
+        this.digest = digest;
+        this.children = children;
+        this.algorithm = algorithm;
+    }
+
+    private static MerkleTree ofFile(String name, long size, String digest, HashAlgorithm algorithm) {
+        return new MerkleTree(name, size, digest, null, algorithm);
+    }
+
+    private static MerkleTree ofDirectory(String name, List<MerkleTree> children, HashAlgorithm algorithm) {
+        StringBuilder builder = new StringBuilder();
+        long size = 0;
+        for (MerkleTree child : children) {
+            builder.append(child.name).append(':').append(child.digest).append(';');
+            size += child.size;
+        }
+        return new MerkleTree(name, size, Hashing.hash(builder.toString(), algorithm), children, algorithm);
+    }
+
+    public static MerkleTree build(File file) throws IOException {
+        HashAlgorithm algorithm = Hashing.getAlgorithm();
+        return build(file, defaultFilter, single -> Hashing.hashFile(single, algorithm), algorithm);
+    }
+
+    /**
+     * Hashes the given file structure.
+     *
+     * @param file     a file or directory, symbolic links are followed
+     * @param filter   decides which entries of directories are included
+     * @param digester  calculates the digests of single files, has to use the given algorithm
+     * @param algorithm the algorithm used for the digests of directories
+     * @return the tree or null if the file does not exist
+     */
+    public static MerkleTree build(File file, FileFilter filter, FileDigester digester, HashAlgorithm algorithm)
+            throws IOException {
+        return build(file, filter, digester, algorithm, known -> null);
+    }
+
+    /**
+     * Hashes the given file structure, but reuses already known subtrees instead of hashing them again. A known
+     * subtree is only used if its structure matches the file system.
+     *
+     * @param known returns the known tree of a file or directory, or null if it is unknown
+     */
+    public static MerkleTree build(File file, FileFilter filter, FileDigester digester, HashAlgorithm algorithm,
+                                   Function<File, MerkleTree> known) throws IOException {
+        if (!file.isFile() && !file.isDirectory()) {
+            return null;
+        }
+        return Hashing.invoke(buildTask(file, filter, digester, algorithm, known));
+    }
+
+    private static RecursiveTask<MerkleTree> buildTask(File file, FileFilter filter, FileDigester digester,
+                                                       HashAlgorithm algorithm, Function<File, MerkleTree> known) {
+        return ForkJoinTasks.task(() -> {
+            MerkleTree reusable = findReusable(file, filter, algorithm, known);
+            if (reusable != null) {
+                return new MerkleTree(file.getName(), reusable.size, reusable.digest, reusable.children, algorithm);
+            }
+
+            if (file.isFile()) {
+                return ofFile(file.getName(), file.length(), digester.digest(file), algorithm);
+            }
+
+            List<RecursiveTask<MerkleTree>> tasks = new ArrayList<>();
+            for (File child : listSorted(file, filter)) {
+                tasks.add(buildTask(child, filter, digester, algorithm, known));
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            List<MerkleTree> children = new ArrayList<>(tasks.size());
+            for (RecursiveTask<MerkleTree> task : tasks) {
+                children.add(task.join());
+            }
+            return ofDirectory(file.getName(), children, algorithm);
+        });
+    }
+
+    /**
+     * Compares this tree against the file system.
+     * <p>
+     * First the structure (names, types and sizes) of the whole tree is compared, which does not require reading
+     * any file content. Only if the structure matches, files are hashed one after another until the first digest
+     * differs.
+     *
+     * @return the path of the first difference or null if the file structure matches this tree
+     */
+    public String findFirstDifference(File file, FileFilter filter, FileDigester digester) throws IOException {
+        return findFirstDifference(file, filter, digester, known -> null);
+    }
+
+    /**
+     * Like {@link #findFirstDifference(File, FileFilter, FileDigester)}, but compares known subtrees by their digest
+     * instead of hashing their content.
+     *
+     * @param known returns the known tree of a file or directory, or null if it is unknown
+     */
+    public String findFirstDifference(File file, FileFilter filter, FileDigester digester,
+                                      Function<File, MerkleTree> known) throws IOException {
+        String structureDifference = findStructureDifference(file, filter);
+        return structureDifference != null ? structureDifference :
+                findContentDifference(file, filter, digester, known);
+    }
+
+    private static MerkleTree findReusable(File file, FileFilter filter, HashAlgorithm algorithm,
+                                           Function<File, MerkleTree> known) {
+        MerkleTree tree = known.apply(file);
+        return tree != null && tree.algorithm == algorithm && tree.findStructureDifference(file, filter) == null ?
+                tree : null;
+    }
+
+    private String findStructureDifference(File file, FileFilter filter) {
+        if (isFile()) {
+            return file.isFile() && file.length() == size ? null : file.getPath();
+        }
+        if (!file.isDirectory()) {
+            return file.getPath();
+        }
+
+        File[] actual = listSorted(file, filter);
+        if (actual.length != children.size()) {
+            return file.getPath();
+        }
+        for (int i = 0; i < actual.length; i++) {
+            if (!actual[i].getName().equals(children.get(i).name)) {
+                return actual[i].getPath();
+            }
+            String difference = children.get(i).findStructureDifference(actual[i], filter);
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    private String findContentDifference(File file, FileFilter filter, FileDigester digester,
+                                         Function<File, MerkleTree> known) throws IOException {
+        MerkleTree reusable = findReusable(file, filter, algorithm, known);
+        if (reusable != null) {
+            return digest.equals(reusable.digest) ? null : file.getPath();
+        }
+
+        if (isFile()) {
+            return digest.equals(digester.digest(file)) ? null : file.getPath();
+        }
+
+        File[] actual = listSorted(file, filter);
+        for (int i = 0; i < actual.length; i++) {
+            String difference = children.get(i).findContentDifference(actual[i], filter, digester, known);
+            if (difference != null) {
+                return difference;
+            }
+        }
+        return null;
+    }
+
+    private static File[] listSorted(File directory, FileFilter filter) {
+        // Entries that are neither files nor directories, e.g. broken links, are not part of the tree
+        File[] files = directory.listFiles(
+                pathname -> (pathname.isFile() || pathname.isDirectory()) && filter.accept(pathname));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return files;
+    }
+
+    public boolean isFile() {
+        return children == null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the child with the given name or null if there is none
+     */
+    public MerkleTree getChild(String name) {
+        if (children == null) {
+            return null;
+        }
+        for (MerkleTree child : children) {
+            if (child.name.equals(name)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    public List<MerkleTree> getChildren() {
+        return children == null ? Collections.emptyList() : Collections.unmodifiableList(children);
+    }
+
+    public JSONObject toJSONObject() {
+        JSONObject object = toJSONObjectWithoutAlgorithm();
+        object.put("algorithm", algorithm.name());
+        return object;
+    }
+
+    private JSONObject toJSONObjectWithoutAlgorithm() {
+        JSONObject object = new JSONObject();
+        object.put("name", name);
+        object.put("size", size);
+        object.put("digest", digest);
+        if (children != null) {
+            JSONArray childArray = new JSONArray();
+            children.forEach(child -> childArray.put(child.toJSONObjectWithoutAlgorithm()));
+            object.put("children", childArray);
+        }
+        return object;
+    }
+
+    /**
+     * Manifests written before the algorithm has been recorded are MD5 based.
+     *
+     * @throws IllegalArgumentException if the recorded algorithm is unknown
+     */
+    public static MerkleTree fromJSONObject(JSONObject object) {
+        return fromJSONObject(object, HashAlgorithm.valueOf(object.optString("algorithm", HashAlgorithm.MD5.name())));
+    }
+
+    private static MerkleTree fromJSONObject(JSONObject object, HashAlgorithm algorithm) {
+        if (!object.has("children")) {
+            return ofFile(object.getString("name"), object.getLong("size"), object.getString("digest"), algorithm);
+        }
+
+        List<MerkleTree> children = new ArrayList<>();
+        JSONArray childArray = object.getJSONArray("children");
+        for (int i = 0; i < childArray.length(); i++) {
+            children.add(fromJSONObject(childArray.getJSONObject(i), algorithm));
+        }
+        return new MerkleTree(object.getString("name"), object.getLong("size"), object.getString("digest"),
+                children, algorithm);
+    }
+}
@@ -0,0 +1,115 @@
+package org.exbio.pipejar.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Incremental implementation of the x64 128-bit variant of MurmurHash3 with seed 0.
+ * <p>
+ * The digest consists of the two 64-bit halves in little endian order, which matches common implementations.
+ */
+class Murmur3Hasher implements Hasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final ByteBuffer pending = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+    private long h1 = 0, h2 = 0;
+    private long length = 0;
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        update(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    @Override
+    public void update(ByteBuffer buffer) {
+        length += buffer.remaining();
+
+        // Complete a partially filled block first
+        while (pending.position() > 0 && buffer.hasRemaining()) {
+            pending.put(buffer.get());
+            if (!pending.hasRemaining()) {
+                pending.flip();
+                processBlock(pending.getLong(), pending.getLong());
+                pending.clear();
+            }
+        }
+
+        ByteBuffer blocks = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        while (blocks.remaining() >= 16) {
+            processBlock(blocks.getLong(), blocks.getLong());
+        }
+        buffer.position(buffer.position() + blocks.position());
+
+        while (buffer.hasRemaining()) {
+            pending.put(buffer.get());
+        }
+    }
+
+    @Override
+    public byte[] digest() {
+        processTail();
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = mix(h1);
+        h2 = mix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array();
+    }
+
+    private void processBlock(long k1, long k2) {
+        h1 ^= mixK1(k1);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+
+        h2 ^= mixK2(k2);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private void processTail() {
+        int remaining = pending.position();
+        if (remaining == 0) {
+            return;
+        }
+
+        long k1 = 0, k2 = 0;
+        for (int i = remaining - 1; i >= 8; i--) {
+            k2 ^= (long) (pending.get(i) & 0xff) << ((i - 8) * 8);
+        }
+        for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+            k1 ^= (long) (pending.get(i) & 0xff) << (i * 8);
+        }
+
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
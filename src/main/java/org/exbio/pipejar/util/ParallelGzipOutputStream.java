@@ -0,0 +1,107 @@
+package org.exbio.pipejar.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compresses the written bytes as gzip, using multiple threads for large outputs.
+ * <p>
+ * The bytes are split into blocks, which are compressed in parallel as independent gzip members and written in order.
+ * The number of blocks in flight is limited, so memory usage does not depend on the output size. Flushing ends the
+ * current block early.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    private static final int blockSize = 1 << 20;
+    private static final int maxBlocksInFlight = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+
+    private final OutputStream out;
+    private final Queue<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+    private byte[] block = new byte[blockSize];
+    private int count = 0;
+    private boolean closed = false;
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length) {
+            submitBlock();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == block.length) {
+                submitBlock();
+            }
+            int length = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, length);
+            count += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        submitBlock();
+        while (!inFlight.isEmpty()) {
+            writeOldest();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (out) {
+            flush();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        byte[] data = block;
+        int length = count;
+        inFlight.add(CompletableFuture.supplyAsync(() -> compress(data, length)));
+        block = new byte[blockSize];
+        count = 0;
+
+        while (inFlight.size() >= maxBlocksInFlight) {
+            writeOldest();
+        }
+    }
+
+    private void writeOldest() throws IOException {
+        try {
+            out.write(inFlight.remove().join());
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 3 + 64);
+        try (OutputStream member = Compression.GZIP.newMember(compressed)) {
+            member.write(data, 0, length);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+        return compressed.toByteArray();
+    }
+}
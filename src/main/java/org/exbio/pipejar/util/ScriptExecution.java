@@ -5,9 +5,25 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 public class ScriptExecution
 {
+    private static ExecutorService waitingPool = null;
+
+    /**
+     * Sets the pool used for waiting on processes started by the asynchronous methods, e.g. a virtual thread pool.
+     * If no pool is set, the process exit notification of the JDK is used.
+     */
+    public static void setWaitingPool(ExecutorService pool)
+    {
+        waitingPool = pool;
+    }
+
     public static void executeAndWait(File file, boolean redirectOutput) throws IOException {
         Process process = execute(file, redirectOutput);
         waitFor(process, List.of(file.getAbsolutePath()));
@@ -42,6 +58,82 @@ public class ScriptExecution
         executeAndWait(command, redirectOutput);
     }
 
+    /**
+     * Starts the command and returns a future that completes with the return code once the process has finished.
+     * The calling thread is not blocked while the process is running.
+     * <p>
+     * Cancelling the future destroys the process. Callables waiting for it should use {@link #await(CompletableFuture)}
+     * rather than {@link CompletableFuture#join()}, which cannot be interrupted, so that the process is destroyed
+     * when the callable is cancelled, e.g. in fail-fast mode.
+     */
+    public static CompletableFuture<Integer> executeAsync(List<String> command, boolean redirectOutput) throws IOException {
+        Process process = execute(command, redirectOutput);
+        return waitForAsync(process, command);
+    }
+
+    public static CompletableFuture<Integer> executeAsync(File file, boolean redirectOutput) throws IOException {
+        Process process = execute(file, redirectOutput);
+        return waitForAsync(process, List.of(file.getAbsolutePath()));
+    }
+
+    /**
+     * Waits for a future returned by the asynchronous methods. If the waiting thread is interrupted, the future is
+     * cancelled, which destroys the process.
+     *
+     * @return the return code of the process
+     */
+    public static int await(CompletableFuture<Integer> future) throws IOException {
+        try
+        {
+            return future.get();
+        } catch (InterruptedException e)
+        {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for command", e);
+        } catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+    }
+
+    private static CompletableFuture<Integer> waitForAsync(Process process, List<String> command)
+    {
+        CompletableFuture<Integer> future = startWaiting(process, command);
+        future.whenComplete((returnCode, throwable) -> {
+            if (throwable instanceof CancellationException)
+            {
+                destroy(process);
+            }
+        });
+        return future;
+    }
+
+    private static CompletableFuture<Integer> startWaiting(Process process, List<String> command)
+    {
+        if (waitingPool == null)
+        {
+            return process.onExit().thenApply(exited -> {
+                if (exited.exitValue() != 0)
+                {
+                    throw new CompletionException(
+                            new IOException("Received return code " + exited.exitValue() + " Command was: " + command));
+                }
+                return exited.exitValue();
+            });
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try
+            {
+                return waitFor(process, command);
+            } catch (IOException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, waitingPool);
+    }
+
     private static int waitFor(Process process, List<String> command) throws IOException {
         try
         {
@@ -51,12 +143,21 @@ public class ScriptExecution
                 throw new IOException("Received return code " + returnCode + " Command was: " + command);
             }
             return returnCode;
-        } catch (InterruptedException | IOException e)
+        } catch (InterruptedException e)
         {
-            throw new IOException(e.getMessage());
+            // The waiting callable has been cancelled, the process would otherwise keep running in the background
+            destroy(process);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for command: " + command);
         }
     }
 
+    private static void destroy(Process process)
+    {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
     private static List<String> getExecutionPrefix(String fileExtension, boolean fileExecution)
     {
         List<String> command = new ArrayList<>();
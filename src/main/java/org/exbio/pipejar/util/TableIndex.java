@@ -0,0 +1,251 @@
+package org.exbio.pipejar.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index over one column of a separated text file, so that repeated lookups do not scan the whole file.
+ * <p>
+ * The index maps every value of the key column to the offsets of the lines containing it. Lines are read from a
+ * memory-mapped view of the file only when they are looked up. Indices are shared by all callers and rebuilt once the
+ * file changes. Only the most recently used indices are kept in memory. They can also be persisted next to the file,
+ * so that later runs skip building them; a persisted index is ignored if the size or modification time of the file
+ * changed.
+ * <p>
+ * Lines are read with a {@link LineReader} and split like {@link String#split(String)} does with the separator regex.
+ * Malformed input is reported instead of being replaced, by an {@link IOException} while building the index and by an
+ * {@link UncheckedIOException} while looking up values.
+ */
+public class TableIndex {
+    private static final Map<Key, TableIndex> indices = new ConcurrentHashMap<>();
+    private static final int persistedVersion = 1;
+    private static final int maxIndices = 32;
+
+    private final Fingerprint fingerprint;
+    private final String separator;
+    private final int keyColumn;
+    private final Map<String, long[]> offsets;
+    private final LineReader reader;
+    private volatile Map<String, long[]> foldedOffsets;
+    /**
+     * Whether the index has been loaded from or saved to disk, or saving it has failed.
+     */
+    private volatile boolean persisted;
+    private volatile long lastUsed = System.nanoTime();
+
+    private TableIndex(Fingerprint fingerprint, String separator, int keyColumn, Map<String, long[]> offsets,
+                       LineReader reader) {
+        this.fingerprint = fingerprint;
+        this.separator = separator;
+        this.keyColumn = keyColumn;
+        this.offsets = offsets;
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the index of the given key column, building it if the file is new or has changed.
+     */
+    public static TableIndex of(File file, String separator, int keyColumn) throws IOException {
+        return of(file, separator, keyColumn, false);
+    }
+
+    /**
+     * Returns the index of the given key column, building it if the file is new or has changed.
+     *
+     * @param persist if true, the index is loaded from and saved to a hidden file next to the table if possible
+     */
+    public static TableIndex of(File file, String separator, int keyColumn, boolean persist) throws IOException {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        Fingerprint fingerprint = Fingerprint.of(path);
+        Key key = new Key(path, separator, keyColumn);
+
+        TableIndex index = indices.get(key);
+        if (index == null || !index.fingerprint.equals(fingerprint) || persist && !index.persisted) {
+            try {
+                // Only lookups of the same table wait while its index is built
+                index = indices.compute(key, (ignore, existing) -> {
+                    if (existing == null || !existing.fingerprint.equals(fingerprint)) {
+                        try {
+                            return open(path, fingerprint, separator, keyColumn, persist);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    if (persist && !existing.persisted) {
+                        save(getPersistedPath(path, separator, keyColumn), fingerprint, existing.offsets);
+                        existing.persisted = true;
+                    }
+                    return existing;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            evict();
+        }
+        index.lastUsed = System.nanoTime();
+        return index;
+    }
+
+    /**
+     * Finds the first line whose key column equals the given term and that has the result column.
+     *
+     * @param ignoreCase if true, the key column is compared like {@link String#equalsIgnoreCase(String)} does
+     * @return the value of the result column, or null if no line matches
+     */
+    public String find(String term, int resultColumn, boolean ignoreCase) {
+        long[] lines = ignoreCase ? getFoldedOffsets().get(fold(term)) : offsets.get(term);
+        if (lines == null) {
+            return null;
+        }
+        for (long offset : lines) {
+            String[] split = decode(reader.lineAt(offset)).split(separator);
+            if (split.length > resultColumn) {
+                return split[resultColumn];
+            }
+        }
+        return null;
+    }
+
+    public int getKeyColumn() {
+        return keyColumn;
+    }
+
+    /**
+     * Removes the least recently used indices until at most maxIndices are left. Their mapped files are released once
+     * no caller uses them anymore.
+     */
+    private static void evict() {
+        while (indices.size() > maxIndices) {
+            indices.entrySet().stream().min(Comparator.comparingLong(entry -> entry.getValue().lastUsed)).ifPresent(
+                    entry -> indices.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static TableIndex open(Path path, Fingerprint fingerprint, String separator, int keyColumn,
+                                   boolean persist) throws IOException {
+        LineReader reader = LineReader.open(path.toFile());
+        Path persisted = getPersistedPath(path, separator, keyColumn);
+        Map<String, long[]> offsets = persist ? load(persisted, fingerprint) : null;
+
+        if (offsets == null) {
+            Map<String, List<Long>> collected = new HashMap<>();
+            reader.forEachLine((offset, line) -> {
+                String[] split = decode(line).split(separator);
+                if (split.length > keyColumn) {
+                    collected.computeIfAbsent(split[keyColumn], key -> new ArrayList<>(1)).add(offset);
+                }
+            });
+
+            offsets = new HashMap<>(collected.size() * 4 / 3 + 1);
+            for (Map.Entry<String, List<Long>> entry : collected.entrySet()) {
+                offsets.put(entry.getKey(), entry.getValue().stream().mapToLong(Long::longValue).toArray());
+            }
+            if (persist) {
+                save(persisted, fingerprint, offsets);
+            }
+        }
+        TableIndex index = new TableIndex(fingerprint, separator, keyColumn, offsets, reader);
+        index.persisted = persist;
+        return index;
+    }
+
+    private static String decode(ByteBuffer line) {
+        return LineReader.decode(line, Charset.defaultCharset());
+    }
+
+    private Map<String, long[]> getFoldedOffsets() {
+        Map<String, long[]> folded = foldedOffsets;
+        if (folded == null) {
+            folded = new HashMap<>(offsets.size() * 4 / 3 + 1);
+            for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+                folded.merge(fold(entry.getKey()), entry.getValue(), TableIndex::merge);
+            }
+            foldedOffsets = folded;
+        }
+        return folded;
+    }
+
+    /**
+     * Maps all strings that are equal ignoring case to the same string, matching
+     * {@link String#equalsIgnoreCase(String)}.
+     */
+    private static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private static long[] merge(long[] first, long[] second) {
+        long[] merged = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, merged, first.length, second.length);
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static Path getPersistedPath(Path table, String separator, int keyColumn) {
+        return table.resolveSibling(
+                "." + table.getFileName() + ".index-" + keyColumn + "-" + Hashing.hash(separator).substring(0, 8));
+    }
+
+    private static Map<String, long[]> load(Path persisted, Fingerprint fingerprint) {
+        if (!Files.isRegularFile(persisted)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(persisted)))) {
+            if (in.readInt() != persistedVersion || in.readLong() != fingerprint.size() ||
+                    in.readLong() != fingerprint.lastModified()) {
+                return null;
+            }
+            int keys = in.readInt();
+            Map<String, long[]> offsets = new HashMap<>(keys * 4 / 3 + 1);
+            for (int i = 0; i < keys; i++) {
+                String key = in.readUTF();
+                long[] lines = new long[in.readInt()];
+                for (int j = 0; j < lines.length; j++) {
+                    lines[j] = in.readLong();
+                }
+                offsets.put(key, lines);
+            }
+            return offsets;
+        } catch (IOException e) {
+            // Rebuilt and saved again
+            return null;
+        }
+    }
+
+    private static void save(Path persisted, Fingerprint fingerprint, Map<String, long[]> offsets) {
+        Path temporary = persisted.resolveSibling(persisted.getFileName() + "." + UUID.randomUUID());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(persistedVersion);
+                out.writeLong(fingerprint.size());
+                out.writeLong(fingerprint.lastModified());
+                out.writeInt(offsets.size());
+                for (Map.Entry<String, long[]> entry : offsets.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (long offset : entry.getValue()) {
+                        out.writeLong(offset);
+                    }
+                }
+            }
+            Files.move(temporary, persisted, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // The directory may not be writable, the index is kept in memory only
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private record Key(Path path, String separator, int keyColumn) {
+    }
+}
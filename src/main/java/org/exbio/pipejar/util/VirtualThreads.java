@@ -0,0 +1,46 @@
+package org.exbio.pipejar.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads for builds targeting Java 17.
+ * <p>
+ * Virtual threads are looked up at runtime, so they are available whenever the library runs on Java 21 or newer.
+ * The java21 build profile replaces this class with a version calling the API directly.
+ */
+public class VirtualThreads {
+    private static final MethodHandle executorFactory = findExecutorFactory();
+
+    public static boolean isSupported() {
+        return executorFactory != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     *
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    public static ExecutorService newExecutor() {
+        if (executorFactory == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.");
+        }
+        try {
+            return (ExecutorService) executorFactory.invokeExact();
+        } catch (Throwable e) {
+            throw new UnsupportedOperationException("Could not create virtual thread executor: " + e.getMessage());
+        }
+    }
+
+    private static MethodHandle findExecutorFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
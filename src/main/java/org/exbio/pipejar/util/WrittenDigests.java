@@ -0,0 +1,48 @@
+package org.exbio.pipejar.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the digests calculated while files have been written, so that they do not have to be read again for hashing.
+ * <p>
+ * A recorded digest is only used as long as the fingerprint of the file did not change since it has been recorded,
+ * which also covers links to the file. All other files are passed to the underlying digester. If that is a
+ * {@link FingerprintCache}, recorded digests are added to it as well.
+ */
+public class WrittenDigests implements FileDigester {
+    private final FileDigester digester;
+    private final HashAlgorithm algorithm;
+    private final Map<Fingerprint, String> recorded = new ConcurrentHashMap<>();
+
+    /**
+     * @param digester  the digester for files not written with a recorded digest
+     * @param algorithm the algorithm the digester uses
+     */
+    public WrittenDigests(FileDigester digester, HashAlgorithm algorithm) {
+        this.digester = digester;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public String digest(File file) throws IOException {
+        String digest = recorded.get(Fingerprint.of(file.toPath()));
+        return digest != null ? digest : digester.digest(file);
+    }
+
+    /**
+     * Records the digest of a file that has just been written completely. Digests of other algorithms are ignored.
+     */
+    public void record(File file, HashAlgorithm algorithm, String digest) throws IOException {
+        if (algorithm != this.algorithm) {
+            return;
+        }
+        Fingerprint fingerprint = Fingerprint.of(file.toPath());
+        recorded.put(fingerprint, digest);
+        if (digester instanceof FingerprintCache fingerprintCache) {
+            fingerprintCache.record(fingerprint, digest);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.exbio.pipejar.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads for builds targeting Java 21.
+ */
+public class VirtualThreads {
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}